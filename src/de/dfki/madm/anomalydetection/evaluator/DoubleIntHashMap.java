@@ -0,0 +1,121 @@
+/*
+ *  RapidMiner Anomaly Detection Extension
+ *
+ *  Copyright (C) 2009-2014 by Deutsches Forschungszentrum fuer
+ *  Kuenstliche Intelligenz GmbH or its licensors, as applicable.
+ *
+ *  This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with this software. If not, see <http://www.gnu.org/licenses/.
+ *
+ * Responsible: Markus Goldstein (Markus.Goldstein@dfki.de)
+ *
+ * URL: http://madm.dfki.de/rapidminer/anomalydetection
+ */
+package de.dfki.madm.anomalydetection.evaluator;
+
+import java.util.Arrays;
+
+/**
+ * Maps double keys to the index of their last occurrence in an array without
+ * boxing. If all keys are integers within a range of less than twice their
+ * number, the indices are stored in an array over the range. Otherwise an open
+ * addressing hash table is used. Keys are compared like {@link Double#equals},
+ * so all NaN values are equal and 0.0 differs from -0.0.
+ * 
+ */
+public class DoubleIntHashMap {
+
+	/** The smallest key if the keys are dense integers, NaN otherwise **/
+	private double offset = Double.NaN;
+
+	/** The index of each key minus offset for dense integer keys **/
+	private int[] dense;
+
+	/** The bits of the keys in the hash table **/
+	private long[] keys;
+
+	/** The values in the hash table, -1 for empty slots **/
+	private int[] values;
+
+	private int mask;
+
+	/**
+	 * Creates the map from keys[i] to i. If a key occurs more than once, it is
+	 * mapped to its last occurrence.
+	 */
+	public DoubleIntHashMap(double[] keys) {
+		int n = keys.length;
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		boolean integers = true;
+		for (int i = 0; i < n && integers; i++) {
+			double key = keys[i];
+			integers = key == Math.rint(key)
+					&& Double.doubleToLongBits(key) != Double
+							.doubleToLongBits(-0.0);
+			min = Math.min(min, key);
+			max = Math.max(max, key);
+		}
+		if (n > 0 && integers && max - min < 2.0 * n) {
+			offset = min;
+			dense = new int[(int) (max - min) + 1];
+			Arrays.fill(dense, -1);
+			for (int i = 0; i < n; i++)
+				dense[(int) (keys[i] - min)] = i;
+			return;
+		}
+
+		int capacity = 2;
+		while (capacity < 2 * n)
+			capacity <<= 1;
+		mask = capacity - 1;
+		this.keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(values, -1);
+		for (int i = 0; i < n; i++) {
+			long bits = Double.doubleToLongBits(keys[i]);
+			int slot = hash(bits) & mask;
+			while (values[slot] >= 0 && this.keys[slot] != bits)
+				slot = (slot + 1) & mask;
+			this.keys[slot] = bits;
+			values[slot] = i;
+		}
+	}
+
+	/**
+	 * Returns the index of the key or -1 if it is not contained.
+	 */
+	public int get(double key) {
+		if (dense != null) {
+			double position = key - offset;
+			if (position >= 0 && position < dense.length
+					&& key == Math.rint(key)
+					&& Double.doubleToLongBits(key) != Double
+							.doubleToLongBits(-0.0))
+				return dense[(int) position];
+			return -1;
+		}
+		long bits = Double.doubleToLongBits(key);
+		int slot = hash(bits) & mask;
+		while (values[slot] >= 0) {
+			if (keys[slot] == bits)
+				return values[slot];
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	public boolean containsKey(double key) {
+		return get(key) >= 0;
+	}
+
+	private static int hash(long bits) {
+		bits *= 0x9e3779b97f4a7c15L;
+		return (int) (bits ^ (bits >>> 32));
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ *  RapidMiner Anomaly Detection Extension
+ *
+ *  Copyright (C) 2009-2014 by Deutsches Forschungszentrum fuer
+ *  Kuenstliche Intelligenz GmbH or its licensors, as applicable.
+ *
+ *  This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with this software. If not, see <http://www.gnu.org/licenses/.
+ *
+ * Responsible: Markus Goldstein (Markus.Goldstein@dfki.de)
+ *
+ * URL: http://madm.dfki.de/rapidminer/anomalydetection
+ */
+package de.dfki.madm.anomalydetection.evaluator;
+
+import com.rapidminer.example.Attribute;
+import com.rapidminer.example.Attributes;
+import com.rapidminer.example.Example;
+import com.rapidminer.example.ExampleSet;
+import com.rapidminer.example.set.SimpleExampleSet;
+import com.rapidminer.example.table.DataRow;
+import com.rapidminer.example.table.ExampleTable;
+import com.rapidminer.example.table.MemoryExampleTable;
+
+/**
+ * Reads the attribute values of an example set into primitive arrays. If the
+ * example set contains all rows of a memory example table in their order, the
+ * values are read directly from the data rows without creating example
+ * objects, and in parallel if more than one thread is given. Otherwise the
+ * examples are iterated.
+ *
+ */
+public class ExampleSetReader {
+
+	private ExampleSetReader() {
+	}
+
+	/**
+	 * Returns true if the i-th example of the example set is the i-th row of
+	 * its memory example table.
+	 */
+	public static boolean isDirectlyAccessible(ExampleSet exampleSet) {
+		ExampleTable table = exampleSet.getExampleTable();
+		return exampleSet instanceof SimpleExampleSet
+				&& table instanceof MemoryExampleTable
+				&& table.size() == exampleSet.size();
+	}
+
+	/**
+	 * Returns the regular attributes of the attributes as array.
+	 */
+	public static Attribute[] toArray(Attributes attributes) {
+		Attribute[] ret = new Attribute[attributes.size()];
+		int i = 0;
+		for (Attribute attribute : attributes)
+			ret[i++] = attribute;
+		return ret;
+	}
+
+	/**
+	 * Reads the values of the given attributes.
+	 *
+	 * @param exampleSet
+	 *            the example set
+	 * @param attributes
+	 *            the attributes to be read
+	 * @param numberOfThreads
+	 *            the number of threads used for reading from a memory table
+	 * @return one row per example with the values of the attributes in the
+	 *         given order
+	 */
+	public static double[][] readPoints(ExampleSet exampleSet,
+			final Attribute[] attributes, int numberOfThreads) {
+		final int n = exampleSet.size();
+		final double[][] points = new double[n][attributes.length];
+		if (isDirectlyAccessible(exampleSet)) {
+			final MemoryExampleTable table = (MemoryExampleTable) exampleSet
+					.getExampleTable();
+			new ParallelLoop() {
+				@Override
+				protected void run(int start, int end, int block) {
+					for (int i = start; i < end; i++) {
+						DataRow row = table.getDataRow(i);
+						double[] point = points[i];
+						for (int j = 0; j < attributes.length; j++)
+							point[j] = row.get(attributes[j]);
+					}
+				}
+			}.execute(n, numberOfThreads);
+		} else {
+			int i = 0;
+			for (Example example : exampleSet) {
+				double[] point = points[i++];
+				for (int j = 0; j < attributes.length; j++)
+					point[j] = example.getValue(attributes[j]);
+			}
+		}
+		return points;
+	}
+
+	/**
+	 * Reads the values of one attribute.
+	 * 
+	 * @param exampleSet
+	 *            the example set
+	 * @param attribute
+	 *            the attribute to be read, e.g. the id attribute
+	 * @param numberOfThreads
+	 *            the number of threads used for reading from a memory table
+	 * @return the value of each example, nominal values are represented by
+	 *         their index in the mapping of the attribute
+	 */
+	public static double[] readValues(ExampleSet exampleSet,
+			final Attribute attribute, int numberOfThreads) {
+		int n = exampleSet.size();
+		final double[] values = new double[n];
+		if (isDirectlyAccessible(exampleSet)) {
+			final MemoryExampleTable table = (MemoryExampleTable) exampleSet
+					.getExampleTable();
+			new ParallelLoop() {
+				@Override
+				protected void run(int start, int end, int block) {
+					for (int i = start; i < end; i++)
+						values[i] = table.getDataRow(i).get(attribute);
+				}
+			}.execute(n, numberOfThreads);
+		} else {
+			int i = 0;
+			for (Example example : exampleSet)
+				values[i++] = example.getValue(attribute);
+		}
+		return values;
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ *  RapidMiner Anomaly Detection Extension
+ *
+ *  Copyright (C) 2009-2014 by Deutsches Forschungszentrum fuer
+ *  Kuenstliche Intelligenz GmbH or its licensors, as applicable.
+ *
+ *  This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with this software. If not, see <http://www.gnu.org/licenses/.
+ *
+ * Responsible: Markus Goldstein (Markus.Goldstein@dfki.de)
+ *
+ * URL: http://madm.dfki.de/rapidminer/anomalydetection
+ */
+package de.dfki.madm.anomalydetection.evaluator;
+
+/**
+ * Executes a loop over the indices 0 .. n-1 in parallel. The indices are split
+ * into contiguous blocks and each block is processed by its own thread. The
+ * calling thread waits until all blocks are finished.
+ *
+ */
+public abstract class ParallelLoop {
+
+	/**
+	 * Processes the indices start .. end-1.
+	 *
+	 * @param start
+	 *            the first index of the block
+	 * @param end
+	 *            the index after the last index of the block
+	 * @param block
+	 *            the number of the block between 0 and the number of threads
+	 *            - 1, which can be used to access per thread buffers.
+	 */
+	protected abstract void run(int start, int end, int block);
+
+	/**
+	 * Returns the number of blocks used by {@link #execute(int, int)}.
+	 */
+	public static int getNumberOfBlocks(int n, int numberOfThreads) {
+		return Math.max(1, Math.min(numberOfThreads, n));
+	}
+
+	/**
+	 * Runs the loop over 0 .. n-1 with the given number of threads. If only one
+	 * thread is used, the loop is executed by the calling thread. An exception
+	 * thrown by one of the threads is rethrown after all threads are finished.
+	 */
+	public void execute(int n, int numberOfThreads) {
+		final int numberOfBlocks = getNumberOfBlocks(n, numberOfThreads);
+		if (numberOfBlocks == 1) {
+			run(0, n, 0);
+			return;
+		}
+		final Throwable[] error = new Throwable[1];
+		Thread[] threads = new Thread[numberOfBlocks];
+		int bulk = n / numberOfBlocks;
+		int rest = n % numberOfBlocks;
+		int start = 0;
+		for (int i = 0; i < numberOfBlocks; i++) {
+			final int blockStart = start;
+			final int blockEnd = start + bulk + (i < rest ? 1 : 0);
+			final int block = i;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						ParallelLoop.this.run(blockStart, blockEnd, block);
+					} catch (Throwable e) {
+						synchronized (error) {
+							if (error[0] == null)
+								error[0] = e;
+						}
+					}
+				}
+			};
+			threads[i].start();
+			start = blockEnd;
+		}
+		for (int i = 0; i < numberOfBlocks; i++)
+			try {
+				threads[i].join();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		if (error[0] instanceof RuntimeException)
+			throw (RuntimeException) error[0];
+		if (error[0] instanceof Error)
+			throw (Error) error[0];
+		if (error[0] != null)
+			throw new RuntimeException(error[0]);
+	}
+}
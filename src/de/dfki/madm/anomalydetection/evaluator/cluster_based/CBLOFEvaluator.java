@@ -23,6 +23,7 @@ package de.dfki.madm.anomalydetection.evaluator.cluster_based;
 import com.rapidminer.tools.math.similarity.DistanceMeasure;
 
 import de.dfki.madm.anomalydetection.evaluator.Evaluator;
+import de.dfki.madm.anomalydetection.evaluator.ParallelLoop;
 
 /**
  * The class that has the actual implementation of the CBLOF.
@@ -59,6 +60,9 @@ public class CBLOFEvaluator implements Evaluator {
 	
 	protected  boolean [] largeCluster;
 
+	/** The number of threads used for scoring the points **/
+	protected int numberOfThreads = 1;
+
 	public CBLOFEvaluator(double alpha, double beta, DistanceMeasure measure,
 			double[][] points, int[] belongsToCluster, double[][] centroids,
 			int clusterSize[], boolean weighting) {
@@ -73,6 +77,30 @@ public class CBLOFEvaluator implements Evaluator {
 
 	}
 
+	/**
+	 * Constructor used when the large clusters are already known, e.g. for
+	 * scoring new points with a {@link CBLOFModel}.
+	 */
+	public CBLOFEvaluator(DistanceMeasure measure, double[][] points,
+			int[] belongsToCluster, double[][] centroids, int clusterSize[],
+			boolean[] largeCluster, boolean weighting) {
+		this.measure = measure;
+		this.points = points;
+		this.belongsToCluster = belongsToCluster;
+		this.centroids = centroids;
+		this.clusterSize = clusterSize;
+		this.largeCluster = largeCluster;
+		this.weighting = weighting;
+	}
+
+	public void setNumberOfThreads(int numberOfThreads) {
+		this.numberOfThreads = numberOfThreads;
+	}
+
+	public boolean[] getLargeCluster() {
+		return largeCluster;
+	}
+
 	
 	public static boolean[] assignLargeClusters(int clusterSize[], double alpha, double beta, int n ) {
 		ClusterOrder[] clusterOrders=ClusterOrder.getOrderedClusters(clusterSize); 
@@ -115,40 +143,37 @@ public class CBLOFEvaluator implements Evaluator {
 	public double[] evaluate() {
 		int n = points.length;
 		
-		double[] cblof = new double[n];
+		final double[] cblof = new double[n];
 		
-		int numberOfClusters= centroids.length;
+		final CentroidIndex largeClusters = new CentroidIndex(centroids,
+				largeCluster, measure);
 		
 		// calculates cblof
-		for (int i = 0; i < n; i++) {
-			int clusterIndex = belongsToCluster[i];
-			if (largeCluster[clusterIndex]) {
-				// It is a large cluster
-				cblof[i] = measure.calculateDistance(centroids[clusterIndex],
-						points[i]);
-				if (weighting)
-					cblof[i] *= clusterSize[clusterIndex];
-			} else {
-				// It is a small cluster
-
-				double MinDistance = Double.MAX_VALUE;
-
-				// search for the nearest large cluster
-				for (int j = 0; j <numberOfClusters; j++) {
-					if(!largeCluster[j])
-						continue;
-					double temp = measure.calculateDistance(centroids[j],
-							points[i]);
-					if (temp < MinDistance)
-						MinDistance = temp;
+		new ParallelLoop() {
+			@Override
+			protected void run(int start, int end, int block) {
+				for (int i = start; i < end; i++) {
+					int clusterIndex = belongsToCluster[i];
+					if (largeCluster[clusterIndex]) {
+						// It is a large cluster
+						cblof[i] = measure.calculateDistance(
+								centroids[clusterIndex], points[i]);
+					} else {
+						// It is a small cluster, the distance to the nearest
+						// large cluster
+						double MinDistance = Double.MAX_VALUE;
+						int nearest = largeClusters.nearest(points[i]);
+						if (nearest >= 0)
+							MinDistance = Math.min(MinDistance, measure
+									.calculateDistance(centroids[nearest],
+											points[i]));
+						cblof[i] = MinDistance;
+					}
+					if (weighting)
+						cblof[i] *= clusterSize[clusterIndex];
 				}
-
-				cblof[i] = MinDistance;
-				if (weighting)
-					cblof[i] *= clusterSize[clusterIndex];
 			}
-
-		}
+		}.execute(n, numberOfThreads);
 
 		return cblof;
 	}
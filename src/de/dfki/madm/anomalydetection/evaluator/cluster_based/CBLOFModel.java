@@ -0,0 +1,50 @@
+/*
+ *  RapidMiner Anomaly Detection Extension
+ *
+ *  Copyright (C) 2009-2014 by Deutsches Forschungszentrum fuer
+ *  Kuenstliche Intelligenz GmbH or its licensors, as applicable.
+ *
+ *  This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with this software. If not, see <http://www.gnu.org/licenses/.
+ *
+ * Responsible: Markus Goldstein (Markus.Goldstein@dfki.de)
+ *
+ * URL: http://madm.dfki.de/rapidminer/anomalydetection
+ */
+package de.dfki.madm.anomalydetection.evaluator.cluster_based;
+
+import com.rapidminer.example.ExampleSet;
+import com.rapidminer.tools.math.similarity.DistanceMeasure;
+
+/**
+ * The model of CBLOF. New points are assigned to their nearest centroid and
+ * get the CBLOF score of that cluster, using the sizes of the clusters the
+ * model was created with.
+ * 
+ */
+public class CBLOFModel extends ClusterBasedModel {
+
+	private static final long serialVersionUID = -7726104582301950143L;
+
+	/** Uses the cluster size as a weight factor **/
+	private boolean weighting;
+
+	public CBLOFModel(ExampleSet trainingExampleSet, DistanceMeasure measure,
+			double[][] centroids, int[] clusterSize, boolean[] largeCluster,
+			boolean weighting) {
+		super(trainingExampleSet, measure, centroids, clusterSize,
+				largeCluster);
+		this.weighting = weighting;
+	}
+
+	@Override
+	protected double[] evaluate(double[][] points, int[] belongsToCluster) {
+		return new CBLOFEvaluator(measure, points, belongsToCluster,
+				centroids, clusterSize, largeCluster, weighting).evaluate();
+	}
+}
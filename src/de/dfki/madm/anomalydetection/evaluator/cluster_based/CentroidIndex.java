@@ -0,0 +1,91 @@
+/*
+ *  RapidMiner Anomaly Detection Extension
+ *
+ *  Copyright (C) 2009-2014 by Deutsches Forschungszentrum fuer
+ *  Kuenstliche Intelligenz GmbH or its licensors, as applicable.
+ *
+ *  This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with this software. If not, see <http://www.gnu.org/licenses/.
+ *
+ * Responsible: Markus Goldstein (Markus.Goldstein@dfki.de)
+ *
+ * URL: http://madm.dfki.de/rapidminer/anomalydetection
+ */
+package de.dfki.madm.anomalydetection.evaluator.cluster_based;
+
+import com.rapidminer.tools.math.similarity.DistanceMeasure;
+
+import de.dfki.madm.anomalydetection.evaluator.nearest_neighbor_based.BallTree;
+
+/**
+ * Finds the nearest centroid among a subset of the centroids, e.g. the nearest
+ * large cluster. For metric distance measures a ball tree over the centroids
+ * is used, otherwise the centroids are scanned. Both return the first centroid
+ * with the smallest distance, calculated as measure(centroid, point).
+ * 
+ */
+public class CentroidIndex {
+
+	private DistanceMeasure measure;
+
+	/** The centroids of the subset **/
+	private double[][] centroids;
+
+	/** The index of each centroid of the subset among all centroids **/
+	private int[] index;
+
+	private BallTree tree;
+
+	/**
+	 * @param centroids
+	 *            all centroids
+	 * @param included
+	 *            the centroids of the subset, null for all centroids
+	 * @param measure
+	 *            the distance measure
+	 */
+	public CentroidIndex(double[][] centroids, boolean[] included,
+			DistanceMeasure measure) {
+		this.measure = measure;
+		int size = 0;
+		for (int i = 0; i < centroids.length; i++)
+			if (included == null || included[i])
+				size++;
+		this.centroids = new double[size][];
+		index = new int[size];
+		size = 0;
+		for (int i = 0; i < centroids.length; i++)
+			if (included == null || included[i]) {
+				this.centroids[size] = centroids[i];
+				index[size++] = i;
+			}
+		if (BallTree.supports(measure))
+			tree = new BallTree(this.centroids, measure);
+	}
+
+	/**
+	 * Returns the index of the nearest centroid of the subset or -1 if the
+	 * subset is empty.
+	 */
+	public int nearest(double[] point) {
+		if (tree != null) {
+			int nearest = tree.nearest(point);
+			return nearest < 0 ? -1 : index[nearest];
+		}
+		int result = -1;
+		double minDistance = Double.POSITIVE_INFINITY;
+		for (int j = 0; j < centroids.length; j++) {
+			double distance = measure.calculateDistance(centroids[j], point);
+			if (result < 0 || distance < minDistance) {
+				minDistance = distance;
+				result = index[j];
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ *  RapidMiner Anomaly Detection Extension
+ *
+ *  Copyright (C) 2009-2014 by Deutsches Forschungszentrum fuer
+ *  Kuenstliche Intelligenz GmbH or its licensors, as applicable.
+ *
+ *  This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with this software. If not, see <http://www.gnu.org/licenses/.
+ *
+ * Responsible: Markus Goldstein (Markus.Goldstein@dfki.de)
+ *
+ * URL: http://madm.dfki.de/rapidminer/anomalydetection
+ */
+package de.dfki.madm.anomalydetection.evaluator.cluster_based;
+
+import com.rapidminer.example.Attribute;
+import com.rapidminer.example.Attributes;
+import com.rapidminer.example.Example;
+import com.rapidminer.example.ExampleSet;
+import com.rapidminer.example.table.AttributeFactory;
+import com.rapidminer.example.table.MemoryExampleTable;
+import com.rapidminer.operator.AbstractModel;
+import com.rapidminer.operator.OperatorException;
+import com.rapidminer.tools.Ontology;
+import com.rapidminer.tools.math.similarity.DistanceMeasure;
+
+import de.dfki.madm.anomalydetection.evaluator.ExampleSetReader;
+
+/**
+ * The base class of the models of the cluster-based anomaly detection
+ * algorithms. The model saves the centroids, the sizes of the clusters and
+ * which of them are large. Applying the model to an example set assigns each
+ * example to its nearest centroid and adds the anomaly score of the algorithm
+ * without clustering the examples again.
+ *
+ */
+public abstract class ClusterBasedModel extends AbstractModel {
+
+	private static final long serialVersionUID = 2904318475512297133L;
+
+	/** The names of the attributes the centroids are defined on **/
+	private String[] attributeNames;
+
+	/** The measure used to calculate the distances **/
+	protected DistanceMeasure measure;
+
+	/** The centroids of the clusters **/
+	protected double[][] centroids;
+
+	/** The size of each cluster **/
+	protected int[] clusterSize;
+
+	/** indicates which cluster is large **/
+	protected boolean[] largeCluster;
+
+	public ClusterBasedModel(ExampleSet trainingExampleSet,
+			DistanceMeasure measure, double[][] centroids, int[] clusterSize,
+			boolean[] largeCluster) {
+		super(trainingExampleSet);
+		Attribute[] attributes = ExampleSetReader.toArray(trainingExampleSet
+				.getAttributes());
+		attributeNames = new String[attributes.length];
+		for (int i = 0; i < attributes.length; i++)
+			attributeNames[i] = attributes[i].getName();
+		this.measure = measure;
+		this.centroids = centroids;
+		this.clusterSize = clusterSize;
+		this.largeCluster = largeCluster;
+	}
+
+	/**
+	 * Creates a deep copy of the model.
+	 */
+	protected ClusterBasedModel(ClusterBasedModel model) {
+		super(model.getTrainingHeader());
+		attributeNames = model.attributeNames;
+		measure = model.measure;
+		centroids = copy(model.centroids);
+		clusterSize = model.clusterSize.clone();
+		largeCluster = model.largeCluster.clone();
+	}
+
+	protected static double[][] copy(double[][] centroids) {
+		double[][] result = new double[centroids.length][];
+		for (int i = 0; i < centroids.length; i++)
+			result[i] = centroids[i].clone();
+		return result;
+	}
+
+	/**
+	 * Calculates the anomaly scores of the points.
+	 *
+	 * @param points
+	 *            the points to be scored
+	 * @param belongsToCluster
+	 *            the nearest centroid of each point
+	 * @return the anomaly scores
+	 */
+	protected abstract double[] evaluate(double[][] points,
+			int[] belongsToCluster);
+
+	/**
+	 * Returns the index of the nearest centroid of each point.
+	 */
+	public int[] assignClusters(double[][] points) {
+		int[] belongsToCluster = new int[points.length];
+		CentroidIndex index = new CentroidIndex(centroids, null, measure);
+		for (int i = 0; i < points.length; i++)
+			belongsToCluster[i] = Math.max(0, index.nearest(points[i]));
+		return belongsToCluster;
+	}
+
+	/**
+	 * Reads the values of the attributes of the model from the example set.
+	 */
+	public double[][] readPoints(ExampleSet exampleSet, int numberOfThreads)
+			throws OperatorException {
+		Attributes attributes = exampleSet.getAttributes();
+		Attribute[] used = new Attribute[attributeNames.length];
+		for (int i = 0; i < attributeNames.length; i++) {
+			used[i] = attributes.get(attributeNames[i]);
+			if (used[i] == null)
+				throw new OperatorException("The attribute "
+						+ attributeNames[i]
+						+ " of the model is missing in the example set.");
+		}
+		return ExampleSetReader.readPoints(exampleSet, used, numberOfThreads);
+	}
+
+	@Override
+	public ExampleSet apply(ExampleSet exampleSet) throws OperatorException {
+		Attributes attributes = exampleSet.getAttributes();
+		double[][] points = readPoints(exampleSet, 1);
+		double[] scores = evaluate(points, assignClusters(points));
+
+		Attribute anomalyScore = AttributeFactory.createAttribute(
+				Attributes.OUTLIER_NAME, Ontology.REAL);
+		exampleSet.getExampleTable().addAttribute(anomalyScore);
+		attributes.setOutlier(anomalyScore);
+		if (ExampleSetReader.isDirectlyAccessible(exampleSet)) {
+			MemoryExampleTable table = (MemoryExampleTable) exampleSet
+					.getExampleTable();
+			for (int i = 0; i < scores.length; i++)
+				table.getDataRow(i).set(anomalyScore, scores[i]);
+		} else {
+			int i = 0;
+			for (Example example : exampleSet)
+				example.setValue(anomalyScore, scores[i++]);
+		}
+		return exampleSet;
+	}
+
+	public double[][] getCentroids() {
+		return centroids;
+	}
+
+	public int[] getClusterSize() {
+		return clusterSize;
+	}
+
+	public boolean[] getLargeCluster() {
+		return largeCluster;
+	}
+
+	@Override
+	public String toString() {
+		int numberOfLargeClusters = 0;
+		for (boolean large : largeCluster)
+			if (large)
+				numberOfLargeClusters++;
+		return getName() + " model with " + centroids.length + " clusters, "
+				+ numberOfLargeClusters + " of them large";
+	}
+}
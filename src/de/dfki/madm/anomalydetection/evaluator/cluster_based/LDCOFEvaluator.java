@@ -23,6 +23,7 @@ package de.dfki.madm.anomalydetection.evaluator.cluster_based;
 import com.rapidminer.tools.math.similarity.DistanceMeasure;
 
 import de.dfki.madm.anomalydetection.evaluator.Evaluator;
+import de.dfki.madm.anomalydetection.evaluator.ParallelLoop;
 
 /**
  * The evaluator of LDCOF algorithm. This is where the algorithm logic is
@@ -51,6 +52,15 @@ public class LDCOFEvaluator implements Evaluator {
 	/** indicates which cluster is large **/
 	protected boolean[] largeCluster;
 
+	/**
+	 * The average distance of the points of each large cluster to its
+	 * centroid, calculated by {@link #evaluate()} if not given
+	 **/
+	protected double[] averageDistances;
+
+	/** The number of threads used for scoring the points **/
+	protected int numberOfThreads = 1;
+
 	/**
 	 * Constructor used when the LDCOF uses the method defined in CBLOF to
 	 * divide the clusters into small and large clusters.
@@ -90,6 +100,36 @@ public class LDCOFEvaluator implements Evaluator {
 
 	}
 
+	/**
+	 * Constructor used when the large clusters and their average distances
+	 * are already known, e.g. for scoring new points with a
+	 * {@link LDCOFModel}.
+	 * 
+	 */
+	public LDCOFEvaluator(DistanceMeasure measure, double[][] points,
+			int[] belongsToCluster, double[][] centroids, int[] clusterSize,
+			boolean[] largeCluster, double[] averageDistances) {
+		this.measure = measure;
+		this.points = points;
+		this.belongsToCluster = belongsToCluster;
+		this.clusterSize = clusterSize;
+		this.centroids = centroids;
+		this.largeCluster = largeCluster;
+		this.averageDistances = averageDistances;
+	}
+
+	public void setNumberOfThreads(int numberOfThreads) {
+		this.numberOfThreads = numberOfThreads;
+	}
+
+	public boolean[] getLargeCluster() {
+		return largeCluster;
+	}
+
+	public double[] getAverageDistances() {
+		return averageDistances;
+	}
+
 	/**
 	 * The methods identifies each cluster as a small or large cluster based on
 	 * the minimum large cluster size
@@ -114,42 +154,60 @@ public class LDCOFEvaluator implements Evaluator {
 		int n = points.length;
 		int numberOfClusters = centroids.length;
 		double[] result = new double[n];
-		double[] distances = new double[n];
-		int[] belongsToLargeCluster = new int[n];
-		double[] summationDistances = new double[numberOfClusters];
-		for (int i = 0; i < n; i++) {
-			int clusterIndex = belongsToCluster[i];
-			if (largeCluster[clusterIndex]) {
-				// It is a large cluster
-				distances[i] = measure.calculateDistance(
-						centroids[clusterIndex], points[i]);
-				summationDistances[clusterIndex] += distances[i];
-				} else {
-				// It is a small cluster
-				double MinDistance = Double.MAX_VALUE;
-
-				// search for the nearest large cluster
-				for (int j = 0; j < numberOfClusters; j++) {
-					if (!largeCluster[j])
-						continue;
-					double temp = measure.calculateDistance(centroids[j],
-							points[i]);
-					if (temp < MinDistance) {
-						MinDistance = temp;
-						clusterIndex = j;
-					}
-				}
+		final double[] distances = new double[n];
+		final int[] belongsToLargeCluster = new int[n];
+		boolean averagesGiven = averageDistances != null;
+		double[] summationDistances = averagesGiven ? averageDistances
+				: new double[numberOfClusters];
+
+		final CentroidIndex largeClusters = new CentroidIndex(centroids,
+				largeCluster, measure);
+
+		new ParallelLoop() {
+			@Override
+			protected void run(int start, int end, int block) {
+				for (int i = start; i < end; i++) {
+					int clusterIndex = belongsToCluster[i];
+					if (largeCluster[clusterIndex]) {
+						// It is a large cluster
+						distances[i] = measure.calculateDistance(
+								centroids[clusterIndex], points[i]);
+					} else {
+						// It is a small cluster
+						double MinDistance = Double.MAX_VALUE;
+
+						// search for the nearest large cluster
+						int nearest = largeClusters.nearest(points[i]);
+						if (nearest >= 0) {
+							double temp = measure.calculateDistance(
+									centroids[nearest], points[i]);
+							if (temp < MinDistance) {
+								MinDistance = temp;
+								clusterIndex = nearest;
+							}
+						}
+
+						distances[i] = MinDistance;
 
-				distances[i] = MinDistance;
+					}
 
+					belongsToLargeCluster[i] = clusterIndex;
+				}
 			}
-
-			belongsToLargeCluster[i] = clusterIndex;
+		}.execute(n, numberOfThreads);
+
+		// summed up in the order of the points, independent of the threads
+		if (!averagesGiven)
+			for (int i = 0; i < n; i++)
+				if (largeCluster[belongsToCluster[i]])
+					summationDistances[belongsToCluster[i]] += distances[i];
+
+		if (!averagesGiven) {
+			for (int i = 0; i < numberOfClusters; i++)
+				summationDistances[i] /= clusterSize[i];
+			averageDistances = summationDistances;
 		}
 
-		for (int i = 0; i < numberOfClusters; i++)
-			summationDistances[i] /= clusterSize[i];
-
 		for (int i = 0; i < n; i++) {
 			if(summationDistances[belongsToLargeCluster[i]]== 0.0) {
 				result[i] = 0;
@@ -0,0 +1,181 @@
+/*
+ *  RapidMiner Anomaly Detection Extension
+ *
+ *  Copyright (C) 2009-2014 by Deutsches Forschungszentrum fuer
+ *  Kuenstliche Intelligenz GmbH or its licensors, as applicable.
+ *
+ *  This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with this software. If not, see <http://www.gnu.org/licenses/.
+ *
+ * Responsible: Markus Goldstein (Markus.Goldstein@dfki.de)
+ *
+ * URL: http://madm.dfki.de/rapidminer/anomalydetection
+ */
+package de.dfki.madm.anomalydetection.evaluator.cluster_based;
+
+import com.rapidminer.example.ExampleSet;
+import com.rapidminer.tools.math.similarity.DistanceMeasure;
+
+/**
+ * The model of LDCOF. New points are assigned to their nearest centroid and
+ * their distance to the nearest large cluster is divided by the average
+ * distance within that cluster the model was created with.
+ * 
+ * The model also keeps the weight and the summed distance of each cluster, so
+ * that {@link OnlineLDCOFEvaluator} can add the points of a stream of example
+ * sets to it. Adding a point moves its centroid by the running mean and adds
+ * its distance to the cluster, the distances of earlier points are not
+ * calculated again. The large clusters are then chosen again by the rule the
+ * model was created with.
+ * 
+ */
+public class LDCOFModel extends ClusterBasedModel {
+
+	private static final long serialVersionUID = 5263180713469948412L;
+
+	/** The average distance of the points of each large cluster to its centroid **/
+	private double[] averageDistances;
+
+	/** The weight of the points of each cluster, i.e. its decayed size **/
+	private double[] weight;
+
+	/** The summed weighted distance of the points of each cluster to its centroid **/
+	private double[] distanceSum;
+
+	/**
+	 * The weight of the points of distanceSum, which misses the points of the
+	 * small clusters the model was created with
+	 **/
+	private double[] distanceWeight;
+
+	/** divides the clusters like CBLOF by alpha and beta instead of gamma **/
+	private boolean likeCBLOF;
+
+	private double alpha, beta, gamma;
+
+	/**
+	 * Creates the model, the large clusters are chosen like in CBLOF by alpha
+	 * and beta if likeCBLOF is set and by gamma otherwise.
+	 */
+	public LDCOFModel(ExampleSet trainingExampleSet, DistanceMeasure measure,
+			double[][] centroids, int[] clusterSize, boolean[] largeCluster,
+			double[] averageDistances, boolean likeCBLOF, double alpha,
+			double beta, double gamma) {
+		// copied, as they are changed by adding points
+		super(trainingExampleSet, measure, copy(centroids), clusterSize
+				.clone(), largeCluster);
+		this.averageDistances = averageDistances;
+		this.likeCBLOF = likeCBLOF;
+		this.alpha = alpha;
+		this.beta = beta;
+		this.gamma = gamma;
+		weight = new double[centroids.length];
+		distanceSum = new double[centroids.length];
+		distanceWeight = new double[centroids.length];
+		for (int i = 0; i < centroids.length; i++) {
+			weight[i] = clusterSize[i];
+			// the average distance is only known for the large clusters
+			if (largeCluster[i]) {
+				distanceSum[i] = averageDistances[i] * clusterSize[i];
+				distanceWeight[i] = clusterSize[i];
+			}
+		}
+	}
+
+	private LDCOFModel(LDCOFModel model) {
+		super(model);
+		averageDistances = model.averageDistances.clone();
+		weight = model.weight.clone();
+		distanceSum = model.distanceSum.clone();
+		distanceWeight = model.distanceWeight.clone();
+		likeCBLOF = model.likeCBLOF;
+		alpha = model.alpha;
+		beta = model.beta;
+		gamma = model.gamma;
+	}
+
+	/**
+	 * Returns a deep copy of the model, which can be updated without changing
+	 * this model.
+	 */
+	public LDCOFModel copy() {
+		return new LDCOFModel(this);
+	}
+
+	public double[] getAverageDistances() {
+		return averageDistances;
+	}
+
+	/**
+	 * Returns the total weight of the points added to the model.
+	 */
+	public double getTotalWeight() {
+		double total = 0;
+		for (double w : weight)
+			total += w;
+		return total;
+	}
+
+	/**
+	 * Adds the points to the clusters.
+	 * 
+	 * @param points
+	 *            the points to be added
+	 * @param belongsToCluster
+	 *            the nearest centroid of each point
+	 * @param decay
+	 *            the factor the weights of the points added before are
+	 *            multiplied by, 1 for keeping all of them
+	 */
+	void update(double[][] points, int[] belongsToCluster, double decay) {
+		int numberOfClusters = centroids.length;
+		for (int j = 0; j < numberOfClusters; j++) {
+			weight[j] *= decay;
+			distanceSum[j] *= decay;
+			distanceWeight[j] *= decay;
+		}
+
+		// running mean of the centroids
+		for (int i = 0; i < points.length; i++) {
+			int j = belongsToCluster[i];
+			weight[j]++;
+			double[] centroid = centroids[j];
+			for (int d = 0; d < centroid.length; d++)
+				centroid[d] += (points[i][d] - centroid[d]) / weight[j];
+		}
+		for (int i = 0; i < points.length; i++) {
+			int j = belongsToCluster[i];
+			distanceSum[j] += measure.calculateDistance(centroids[j],
+					points[i]);
+			distanceWeight[j]++;
+		}
+
+		// a decayed cluster keeps at least size 1 for dividing the clusters
+		for (int j = 0; j < numberOfClusters; j++)
+			clusterSize[j] = Math.max(1, (int) Math.round(weight[j]));
+		double total = getTotalWeight();
+		if (likeCBLOF)
+			largeCluster = CBLOFEvaluator.assignLargeClusters(clusterSize,
+					alpha, beta, (int) Math.round(total));
+		else
+			largeCluster = LDCOFEvaluator.assignLargeClusters(clusterSize,
+					gamma * total / numberOfClusters);
+
+		averageDistances = new double[numberOfClusters];
+		for (int j = 0; j < numberOfClusters; j++)
+			if (largeCluster[j] && distanceWeight[j] > 0)
+				averageDistances[j] = distanceSum[j] / distanceWeight[j];
+	}
+
+	@Override
+	protected double[] evaluate(double[][] points, int[] belongsToCluster) {
+		return new LDCOFEvaluator(measure, points, belongsToCluster,
+				centroids, clusterSize, largeCluster, averageDistances)
+				.evaluate();
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ *  RapidMiner Anomaly Detection Extension
+ *
+ *  Copyright (C) 2009-2014 by Deutsches Forschungszentrum fuer
+ *  Kuenstliche Intelligenz GmbH or its licensors, as applicable.
+ *
+ *  This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with this software. If not, see <http://www.gnu.org/licenses/.
+ *
+ * Responsible: Markus Goldstein (Markus.Goldstein@dfki.de)
+ *
+ * URL: http://madm.dfki.de/rapidminer/anomalydetection
+ */
+package de.dfki.madm.anomalydetection.evaluator.cluster_based;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import de.dfki.madm.anomalydetection.evaluator.ParallelLoop;
+
+/**
+ * Mini-batch k-means proposed by Sculley (2010) with k-means++ seeding
+ * proposed by Arthur and Vassilvitskii (2007). Each iteration assigns a random
+ * batch of points to their nearest centroids and moves each centroid towards
+ * its points with a learning rate of one over the number of points it has
+ * received so far. Finally all points are assigned to their nearest centroid.
+ * The seeding, the batch assignment and the final assignment are computed in
+ * parallel, the result does not depend on the number of threads. The squared
+ * euclidean distance is used throughout.
+ * 
+ * Clusters without any point after the final assignment are removed.
+ * 
+ */
+public class MiniBatchKMeans {
+
+	private double[][] points;
+	private int k, batchSize, iterations, numberOfThreads;
+	private Random random;
+
+	private double[][] centroids;
+	private int[] belongsToCluster;
+	private int[] clusterSize;
+
+	public MiniBatchKMeans(double[][] points, int k, int batchSize,
+			int iterations, Random random, int numberOfThreads) {
+		this.points = points;
+		this.k = Math.min(k, points.length);
+		this.batchSize = Math.min(batchSize, points.length);
+		this.iterations = iterations;
+		this.random = random;
+		this.numberOfThreads = numberOfThreads;
+	}
+
+	/**
+	 * Clusters the points.
+	 */
+	public void cluster() {
+		seed();
+		final int[] batch = new int[batchSize];
+		final int[] assignment = new int[batchSize];
+		int[] received = new int[k];
+		for (int iteration = 0; iteration < iterations; iteration++) {
+			for (int i = 0; i < batchSize; i++)
+				batch[i] = random.nextInt(points.length);
+			new ParallelLoop() {
+				@Override
+				protected void run(int start, int end, int block) {
+					for (int i = start; i < end; i++)
+						assignment[i] = nearest(points[batch[i]]);
+				}
+			}.execute(batchSize, numberOfThreads);
+			for (int i = 0; i < batchSize; i++) {
+				int c = assignment[i];
+				double eta = 1.0 / ++received[c];
+				double[] centroid = centroids[c];
+				double[] point = points[batch[i]];
+				for (int j = 0; j < centroid.length; j++)
+					centroid[j] += eta * (point[j] - centroid[j]);
+			}
+		}
+		assign();
+	}
+
+	/**
+	 * Chooses the initial centroids by k-means++, each point is chosen with a
+	 * probability proportional to its squared distance to the nearest
+	 * centroid chosen so far.
+	 */
+	private void seed() {
+		final int n = points.length;
+		centroids = new double[k][];
+		if (k == 0)
+			return;
+		centroids[0] = points[random.nextInt(n)].clone();
+		final double[] minDistance = new double[n];
+		Arrays.fill(minDistance, Double.POSITIVE_INFINITY);
+		for (int c = 1; c < k; c++) {
+			final double[] last = centroids[c - 1];
+			new ParallelLoop() {
+				@Override
+				protected void run(int start, int end, int block) {
+					for (int i = start; i < end; i++) {
+						double distance = squaredDistance(points[i], last);
+						if (distance < minDistance[i])
+							minDistance[i] = distance;
+					}
+				}
+			}.execute(n, numberOfThreads);
+			// summed up in the order of the points, independent of the threads
+			double total = 0;
+			for (int i = 0; i < n; i++)
+				total += minDistance[i];
+			int chosen;
+			if (total == 0)
+				chosen = random.nextInt(n);
+			else {
+				double target = random.nextDouble() * total;
+				chosen = n - 1;
+				for (int i = 0; i < n; i++) {
+					target -= minDistance[i];
+					if (target < 0) {
+						chosen = i;
+						break;
+					}
+				}
+			}
+			centroids[c] = points[chosen].clone();
+		}
+	}
+
+	/**
+	 * Assigns all points to their nearest centroid and removes the empty
+	 * clusters.
+	 */
+	private void assign() {
+		final int n = points.length;
+		belongsToCluster = new int[n];
+		new ParallelLoop() {
+			@Override
+			protected void run(int start, int end, int block) {
+				for (int i = start; i < end; i++)
+					belongsToCluster[i] = nearest(points[i]);
+			}
+		}.execute(n, numberOfThreads);
+		int[] size = new int[k];
+		for (int i = 0; i < n; i++)
+			size[belongsToCluster[i]]++;
+
+		int[] index = new int[k];
+		int numberOfClusters = 0;
+		for (int c = 0; c < k; c++)
+			index[c] = size[c] > 0 ? numberOfClusters++ : -1;
+		double[][] nonEmpty = new double[numberOfClusters][];
+		clusterSize = new int[numberOfClusters];
+		for (int c = 0; c < k; c++)
+			if (index[c] >= 0) {
+				nonEmpty[index[c]] = centroids[c];
+				clusterSize[index[c]] = size[c];
+			}
+		centroids = nonEmpty;
+		for (int i = 0; i < n; i++)
+			belongsToCluster[i] = index[belongsToCluster[i]];
+	}
+
+	private int nearest(double[] point) {
+		int result = 0;
+		double minDistance = Double.POSITIVE_INFINITY;
+		for (int c = 0; c < centroids.length; c++) {
+			double distance = squaredDistance(point, centroids[c]);
+			if (distance < minDistance) {
+				minDistance = distance;
+				result = c;
+			}
+		}
+		return result;
+	}
+
+	private static double squaredDistance(double[] a, double[] b) {
+		double sum = 0;
+		for (int i = 0; i < a.length; i++) {
+			double difference = a[i] - b[i];
+			sum += difference * difference;
+		}
+		return sum;
+	}
+
+	public double[][] getCentroids() {
+		return centroids;
+	}
+
+	public int[] getBelongsToCluster() {
+		return belongsToCluster;
+	}
+
+	public int[] getClusterSize() {
+		return clusterSize;
+	}
+}
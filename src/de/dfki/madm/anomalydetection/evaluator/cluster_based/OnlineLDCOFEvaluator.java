@@ -0,0 +1,76 @@
+/*
+ *  RapidMiner Anomaly Detection Extension
+ *
+ *  Copyright (C) 2009-2014 by Deutsches Forschungszentrum fuer
+ *  Kuenstliche Intelligenz GmbH or its licensors, as applicable.
+ *
+ *  This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with this software. If not, see <http://www.gnu.org/licenses/.
+ *
+ * Responsible: Markus Goldstein (Markus.Goldstein@dfki.de)
+ *
+ * URL: http://madm.dfki.de/rapidminer/anomalydetection
+ */
+package de.dfki.madm.anomalydetection.evaluator.cluster_based;
+
+import de.dfki.madm.anomalydetection.evaluator.Evaluator;
+
+/**
+ * The evaluator of LDCOF for a stream of example sets. The points are assigned
+ * to the nearest centroids of a {@link LDCOFModel} and added to its clusters,
+ * afterwards they are scored by the updated centroids, large clusters and
+ * average distances. The points are never clustered again, so each example set
+ * takes O(points * clusters) independent of the examples seen before.
+ * 
+ * The model is changed, so it has to be a copy if it is used elsewhere, see
+ * {@link LDCOFModel#copy()}.
+ * 
+ */
+public class OnlineLDCOFEvaluator implements Evaluator {
+
+	private LDCOFModel model;
+
+	/** The points in the example set. **/
+	private double[][] points;
+
+	/** The factor the weights of the points added before are multiplied by **/
+	private double decay;
+
+	/** The number of threads used for scoring the points **/
+	private int numberOfThreads = 1;
+
+	/**
+	 * @param model
+	 *            the model the points are added to
+	 * @param points
+	 *            the points in the order of the attributes of the model
+	 * @param decay
+	 *            the factor the weights of the points added to the model
+	 *            before are multiplied by, 1 for keeping all of them
+	 */
+	public OnlineLDCOFEvaluator(LDCOFModel model, double[][] points,
+			double decay) {
+		this.model = model;
+		this.points = points;
+		this.decay = decay;
+	}
+
+	public void setNumberOfThreads(int numberOfThreads) {
+		this.numberOfThreads = numberOfThreads;
+	}
+
+	public double[] evaluate() {
+		int[] belongsToCluster = model.assignClusters(points);
+		model.update(points, belongsToCluster, decay);
+		LDCOFEvaluator evaluator = new LDCOFEvaluator(model.measure, points,
+				belongsToCluster, model.getCentroids(), model.getClusterSize(),
+				model.getLargeCluster(), model.getAverageDistances());
+		evaluator.setNumberOfThreads(numberOfThreads);
+		return evaluator.evaluate();
+	}
+}
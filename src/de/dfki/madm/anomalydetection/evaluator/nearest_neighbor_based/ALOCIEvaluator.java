@@ -19,24 +19,28 @@
  */
 package de.dfki.madm.anomalydetection.evaluator.nearest_neighbor_based;
 
-import java.util.HashMap;
-import java.util.Collection;
+import java.util.Arrays;
+
 import com.rapidminer.tools.RandomGenerator;
 import com.rapidminer.tools.math.similarity.DistanceMeasure;
 
 import de.dfki.madm.anomalydetection.evaluator.Evaluator;
+import de.dfki.madm.anomalydetection.evaluator.ParallelLoop;
 
 /**
  * This is the implementation of aLOCI (Fast Outlier Detection Using the Local
  * Coorelation Integeral) proposed by S. papdimitriou el al (2003)
  * 
+ * If a model is set, the points are added to its quadtrees instead of building
+ * new ones and are scored against all points of the model.
+ * 
  * @author Ahmed Elsawy
  * 
  */
 
 public class ALOCIEvaluator implements Evaluator {
 	private DistanceMeasure measure;
-	private TreeNode[] root;
+	private ALOCITree[] root;
 	private int dimensions, levels, alpha;
 	private double Rp;
 	private double[][] points;
@@ -46,6 +50,9 @@ public class ALOCIEvaluator implements Evaluator {
 	private RandomGenerator rg;
 	private boolean parallelProcess;
 	private int numberOfThreads;
+	private int numberOfScoringThreads;
+	private double[] min;
+	private ALOCIModel model;
 
 	/*
 	 * Parallelizing creation of Quad-trees
@@ -59,22 +66,8 @@ public class ALOCIEvaluator implements Evaluator {
 		}
 
 		public void run() {
-			for (int g = start; g <= end; ++g) {
-				root[g] = new TreeNode(points.length);
-
-				for (int i = 0; i < points.length; ++i) {
-					double r = Rp / 2;
-					double[] center = createPoint(dimensions, r);
-
-					TreeNode currentTreeNode = root[g];
-					for (int j = 0; j < levels; ++j) {
-						int index = cellFinder(points[i], center, grids[g],
-								r / 2);
-						currentTreeNode = currentTreeNode.createChild(index);
-						r /= 2;
-					}
-				}
-			}
+			for (int g = start; g <= end; ++g)
+				root[g] = createQuadTree(g);
 		}
 	}
 
@@ -82,7 +75,7 @@ public class ALOCIEvaluator implements Evaluator {
 			int numOfGrids, int levels, int alpha, int nmin,
 			RandomGenerator rg, boolean parallelProcess, int numberOfThreads) {
 		this.measure = measure;
-		this.points = changePoints(points);
+		this.points = points;
 		this.levels = levels;
 		this.alpha = alpha;
 		this.dimensions = points[0].length;
@@ -92,28 +85,51 @@ public class ALOCIEvaluator implements Evaluator {
 		this.rg = rg;
 		this.parallelProcess = parallelProcess;
 		this.numberOfThreads = Math.min(numberOfThreads, grids.length);
+		this.numberOfScoringThreads = parallelProcess ? numberOfThreads : 1;
 
 		for (int i = 0; i < scores.length; ++i)
 			scores[i] = Double.MIN_VALUE;
 	}
 
 	/*
-	 * calculate max score for each point
+	 * Sets the model the points are added to. An empty model gets the grids
+	 * placed for the points.
+	 */
+	public void setModel(ALOCIModel model) {
+		this.model = model;
+	}
+
+	/*
+	 * calculate max score for each point, the points are split into blocks
+	 * which are scored in parallel
 	 */
 	private void calculateAllScores() {
-		TreeNode[] counting = new TreeNode[grids.length];
-		TreeNode[] sampling = new TreeNode[grids.length];
+		new ParallelLoop() {
+			@Override
+			protected void run(int start, int end, int block) {
+				calculateScores(start, end);
+			}
+		}.execute(points.length, numberOfScoringThreads);
+	}
+
+	/*
+	 * calculate max score for the points start .. end-1
+	 */
+	private void calculateScores(int start, int end) {
+		int[][] path = new int[grids.length][levels + 1];
 
 		double[][] countingCenter = new double[grids.length][dimensions];
 		double[][] samplingCenter = new double[grids.length][dimensions];
 
-		for (int p = 0; p < points.length; ++p) {
+		double[] moved = new double[dimensions];
+		double[] movedCounting = new double[dimensions];
+
+		for (int p = start; p < end; ++p) {
 			for (int g = 0; g < grids.length; ++g) {
-				counting[g] = root[g];
-				sampling[g] = root[g];
+				root[g].getPath(p, path[g]);
 
-				countingCenter[g] = createPoint(dimensions, Rp / 2);
-				samplingCenter[g] = createPoint(dimensions, Rp / 2);
+				Arrays.fill(countingCenter[g], Rp / 2);
+				Arrays.fill(samplingCenter[g], Rp / 2);
 			}
 
 			double countingRadius = Rp;
@@ -121,30 +137,30 @@ public class ALOCIEvaluator implements Evaluator {
 
 			for (int level = 0; level < alpha; ++level) {
 				countingRadius /= 2;
-				for (int g = 0; g < grids.length; ++g) {
-					int index = cellFinder(points[p], countingCenter[g],
-							grids[g], countingRadius / 2);
-					counting[g] = counting[g].getChild(index);
-				}
+				for (int g = 0; g < grids.length; ++g)
+					cellFinder(points[p], countingCenter[g], grids[g],
+							countingRadius / 2);
 			}
 			for (int level = alpha; level <= levels; ++level) {
 				double dist = Double.MAX_VALUE;
 				int cellIndex = -1;
 				for (int g = 0; g < grids.length; ++g) {
 					double newDistance = measure.calculateDistance(
-							move(points[p], grids[g], true), countingCenter[g]);
+							move(points[p], grids[g], true, moved),
+							countingCenter[g]);
 					if (newDistance < dist) {
 						dist = newDistance;
 						cellIndex = g;
 					}
 				}
+				move(countingCenter[cellIndex], grids[cellIndex], false,
+						movedCounting);
 				dist = Double.MAX_VALUE;
 				int cellIndex2 = -1;
 				for (int g = 0; g < grids.length; ++g) {
 					double newDistance = measure.calculateDistance(
-							move(samplingCenter[g], grids[g], false),
-							move(countingCenter[cellIndex], grids[cellIndex],
-									false));
+							move(samplingCenter[g], grids[g], false, moved),
+							movedCounting);
 					if (newDistance < dist) {
 						dist = newDistance;
 						cellIndex2 = g;
@@ -152,24 +168,26 @@ public class ALOCIEvaluator implements Evaluator {
 				}
 				countingRadius /= 2;
 				samplingRadius /= 2;
-				calculateScore(counting[cellIndex], sampling[cellIndex2], p,
-						level, samplingCenter[cellIndex2]);
+				calculateScore(root[cellIndex], level, path[cellIndex][level],
+						root[cellIndex2], level - alpha,
+						path[cellIndex2][level - alpha], p);
 
 				if (level < levels)
 					for (int g = 0; g < grids.length; ++g) {
-						int nextChild = cellFinder(points[p],
-								countingCenter[g], grids[g], countingRadius / 2);
-						counting[g] = counting[g].getChild(nextChild);
-						nextChild = cellFinder(points[p], samplingCenter[g],
-								grids[g], samplingRadius / 2);
-						sampling[g] = sampling[g].getChild(nextChild);
+						cellFinder(points[p], countingCenter[g], grids[g],
+								countingRadius / 2);
+						cellFinder(points[p], samplingCenter[g], grids[g],
+								samplingRadius / 2);
 					}
 			}
 		}
 	}
 
-	private double[] move(double[] p1, double[] shift1, boolean sign) {
-		double[] result = new double[p1.length];
+	/*
+	 * Writes p1 shifted by shift1 into result
+	 */
+	private double[] move(double[] p1, double[] shift1, boolean sign,
+			double[] result) {
 		if (sign)
 			for (int i = 0; i < p1.length; ++i)
 				result[i] = p1[i] - shift1[i];
@@ -180,13 +198,20 @@ public class ALOCIEvaluator implements Evaluator {
 		return result;
 	}
 
-	private void calculateScore(TreeNode ci, TreeNode cj, int p, int level,
-			double[] center) {
-		if (cj.cj >= nmin) {
-			double n = ci.cj;
-			double nAverage = sq(cj, 2, n) / sq(cj, 1, n);
-			double deviation = Math.sqrt(((sq(cj, 3, n)) / sq(cj, 1, n))
-					- (Math.pow((sq(cj, 2, n) / sq(cj, 1, n)), 2)));
+	/*
+	 * ci is the counting cell at countingLevel and cj the sampling cell at
+	 * samplingLevel
+	 */
+	private void calculateScore(ALOCITree countingTree,
+			int countingLevel, int ci, ALOCITree samplingTree,
+			int samplingLevel, int cj, int p) {
+		if (samplingTree.getCount(samplingLevel, cj) >= nmin) {
+			double n = countingTree.getCount(countingLevel, ci);
+			double s1 = samplingTree.getCount(samplingLevel, cj);
+			double s2 = samplingTree.getSquaredSum(samplingLevel, cj);
+			double s3 = samplingTree.getCubedSum(samplingLevel, cj);
+			double nAverage = s2 / s1;
+			double deviation = Math.sqrt((s3 / s1) - (Math.pow((s2 / s1), 2)));
 
 			if (deviation != 0)
 				scores[p] = Math.max((nAverage - n) / deviation, scores[p]);
@@ -197,28 +222,51 @@ public class ALOCIEvaluator implements Evaluator {
 	 * create Quad-trees with no parallelization
 	 */
 	private void createQuadTree() {
-		root = new TreeNode[grids.length];
-		for (int g = 0; g < grids.length; ++g) {
-			root[g] = new TreeNode(points.length);
-			for (int i = 0; i < points.length; ++i) {
-				double r = Rp / 2;
-				double[] center = createPoint(dimensions, r);
-
-				TreeNode currentTreeNode = root[g];
-				for (int j = 0; j < levels; ++j) {
-					int index = cellFinder(points[i], center, grids[g], r / 2);
-					currentTreeNode = currentTreeNode.createChild(index);
-					r /= 2;
-				}
+		root = new ALOCITree[grids.length];
+		for (int g = 0; g < grids.length; ++g)
+			root[g] = createQuadTree(g);
+	}
+
+	/*
+	 * Creates the Quad-tree of grid g from the path of each point to its leaf,
+	 * or adds the points to the Quad-tree of the model
+	 */
+	private ALOCITree createQuadTree(int g) {
+		int words = (levels * dimensions + 63) / 64;
+		long[] keys = new long[points.length * words];
+		double[] center = new double[dimensions];
+		for (int i = 0; i < points.length; ++i) {
+			double r = Rp / 2;
+			for (int d = 0; d < dimensions; ++d)
+				center[d] = r;
+
+			int bit = 0;
+			for (int j = 0; j < levels; ++j) {
+				double move = r / 2;
+				for (int d = 0; d < dimensions; ++d, ++bit)
+					if (points[i][d] - grids[g][d] > center[d]) {
+						center[d] += move;
+						keys[i * words + (bit >>> 6)] |= 1L << (63 - (bit & 63));
+					} else
+						center[d] -= move;
+				r /= 2;
 			}
 		}
+		if (model != null) {
+			ALOCIIncrementalTree tree = model.getTrees()[g];
+			tree.add(keys, words);
+			return tree;
+		}
+		ALOCIQuadTree tree = new ALOCIQuadTree(keys, words, levels, dimensions);
+		tree.computeSums(alpha);
+		return tree;
 	}
 
 	/*
 	 * create Quad-trees with parallelization
 	 */
 	private void createQuadTreeParallel() {
-		root = new TreeNode[grids.length];
+		root = new ALOCITree[grids.length];
 
 		int bulk = (int) Math.ceil((double) grids.length / numberOfThreads);
 
@@ -238,33 +286,22 @@ public class ALOCIEvaluator implements Evaluator {
 			}
 	}
 
-	private double[] createPoint(int d, double value) {
-		double[] point = new double[d];
-		for (int i = 0; i < d; ++i)
-			point[i] = value;
-		return point;
-	}
-
 	/*
-	 * Finds the index of the cell where point p should be inserted
+	 * Moves the center to the center of the child cell containing point p
 	 */
-	private int cellFinder(double[] p, double[] center, double[] shift,
+	private void cellFinder(double[] p, double[] center, double[] shift,
 			double move) {
-		int result = 0;
 		for (int i = 0; i < p.length; ++i)
-			if (p[i] - shift[i] > center[i]) {
+			if (p[i] - shift[i] > center[i])
 				center[i] += move;
-				result = result | (1 << i);
-			} else
+			else
 				center[i] -= move;
-		return result;
 	}
 
 	/*
-	 * Changes the location of all the points such that the minimum value in all
-	 * dimension is 0
+	 * Finds the minimum value of each dimension
 	 */
-	private double[][] changePoints(double[][] points) {
+	private double[] minimum(double[][] points) {
 		double[] min = new double[points[0].length];
 		for (int i = 0; i < min.length; ++i) {
 			min[i] = Double.MAX_VALUE;
@@ -273,6 +310,14 @@ public class ALOCIEvaluator implements Evaluator {
 					min[i] = points[j][i];
 			}
 		}
+		return min;
+	}
+
+	/*
+	 * Changes the location of all the points such that the minimum value in all
+	 * dimension is 0
+	 */
+	private double[][] changePoints(double[][] points, double[] min) {
 		double[][] result = new double[points.length][points[0].length];
 		for (int i = 0; i < min.length; ++i)
 			for (int j = 0; j < points.length; ++j)
@@ -281,26 +326,6 @@ public class ALOCIEvaluator implements Evaluator {
 		return result;
 	}
 
-	private double sq(TreeNode n, int q, double counting) {
-		double result = sqRecursive(n, q, 0, alpha);
-		return result;
-	}
-
-	/*
-	 * Traverses the quadtree to reach the alphaR values in the sampling
-	 * neighborhood
-	 */
-	private double sqRecursive(TreeNode n, int q, int l, int max) {
-		if (l == max)
-			return Math.pow(n.cj, q);
-		Collection<TreeNode> c = n.children.values();
-		Object[] children = c.toArray();
-		double result = 0;
-		for (int i = 0; i < children.length; ++i)
-			result += sqRecursive((TreeNode) children[i], q, l + 1, max);
-		return result;
-	}
-
 	/*
 	 * This method creates shifts for the quadtree the size of the root of the
 	 * quadtree is Rp which is twice the size of the largest value in all
@@ -324,7 +349,18 @@ public class ALOCIEvaluator implements Evaluator {
 
 	@Override
 	public double[] evaluate() {
-		createShifts();
+		if (model != null && model.isInitialized()) {
+			min = model.getMin();
+			points = changePoints(points, min);
+			Rp = model.getRp();
+			grids = model.getGrids();
+		} else {
+			min = minimum(points);
+			points = changePoints(points, min);
+			createShifts();
+			if (model != null)
+				model.initialize(min, Rp, grids);
+		}
 		if (!parallelProcess)
 			createQuadTree();
 		else
@@ -334,33 +370,3 @@ public class ALOCIEvaluator implements Evaluator {
 		return scores;
 	}
 }
-
-class TreeNode {
-	public int cj;
-	public HashMap<Integer, TreeNode> children;
-
-	public TreeNode(int cj) {
-		this.cj = cj;
-	}
-
-	public TreeNode() {
-	}
-
-	public TreeNode createChild(int index) {
-		if (children == null)
-			children = new HashMap<Integer, TreeNode>(10);
-
-		TreeNode currentTreeNode = children.get(index);
-
-		if (currentTreeNode == null) {
-			currentTreeNode = new TreeNode();
-			children.put(index, currentTreeNode);
-		}
-		currentTreeNode.cj++;
-		return currentTreeNode;
-	}
-
-	public TreeNode getChild(int index) {
-		return children.get(index);
-	}
-}
\ No newline at end of file
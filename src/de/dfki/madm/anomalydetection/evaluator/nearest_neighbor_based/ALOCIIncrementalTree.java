@@ -0,0 +1,228 @@
+/*
+ *  RapidMiner Anomaly Detection Extension
+ *
+ *  Copyright (C) 2009-2014 by Deutsches Forschungszentrum fuer
+ *  Kuenstliche Intelligenz GmbH or its licensors, as applicable.
+ *
+ *  This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with this software. If not, see <http://www.gnu.org/licenses/.
+ *
+ * Responsible: Markus Goldstein (Markus.Goldstein@dfki.de)
+ *
+ * URL: http://madm.dfki.de/rapidminer/anomalydetection
+ */
+package de.dfki.madm.anomalydetection.evaluator.nearest_neighbor_based;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The quadtree of one grid of aLOCI to which points can be added. Each cell is
+ * a node identified by its index. The children of a node are found in an open
+ * addressing hash table over the parent and the position of the child within
+ * the parent, which is one bit per dimension.
+ *
+ * Adding a point increases the count of the cells on its path and updates the
+ * sums of the squared and cubed counts of the cells alpha levels above, so
+ * adding a point takes O(levels) lookups and the tree never has to be
+ * rebuilt.
+ *
+ */
+public class ALOCIIncrementalTree implements ALOCITree, Serializable {
+
+	private static final long serialVersionUID = -4617750281629306152L;
+
+	private int levels, dimensions, alpha;
+
+	/** The number of words of the position of a child **/
+	private int codeWords;
+
+	private int numberOfNodes;
+	private int[] parent;
+	private int[] count;
+	private double[] squaredSum;
+	private double[] cubedSum;
+
+	/** The position of node i within its parent in code[i*codeWords ..] **/
+	private long[] code;
+
+	/** The hash table of the nodes except the root, -1 for empty slots **/
+	private int[] table;
+
+	/** The leaves of the points last added **/
+	private int[] leaves;
+
+	public ALOCIIncrementalTree(int levels, int dimensions, int alpha) {
+		this.levels = levels;
+		this.dimensions = dimensions;
+		this.alpha = alpha;
+		this.codeWords = (dimensions + 63) / 64;
+		int capacity = 16;
+		parent = new int[capacity];
+		count = new int[capacity];
+		squaredSum = new double[capacity];
+		cubedSum = new double[capacity];
+		code = new long[capacity * codeWords];
+		table = new int[2 * capacity];
+		Arrays.fill(table, -1);
+		leaves = new int[0];
+
+		// the root
+		parent[0] = -1;
+		numberOfNodes = 1;
+	}
+
+	private ALOCIIncrementalTree(ALOCIIncrementalTree tree) {
+		levels = tree.levels;
+		dimensions = tree.dimensions;
+		alpha = tree.alpha;
+		codeWords = tree.codeWords;
+		numberOfNodes = tree.numberOfNodes;
+		parent = tree.parent.clone();
+		count = tree.count.clone();
+		squaredSum = tree.squaredSum.clone();
+		cubedSum = tree.cubedSum.clone();
+		code = tree.code.clone();
+		table = tree.table.clone();
+		leaves = tree.leaves.clone();
+	}
+
+	/**
+	 * Returns a copy of the tree, points can be added to it without changing
+	 * this tree.
+	 */
+	public ALOCIIncrementalTree copy() {
+		return new ALOCIIncrementalTree(this);
+	}
+
+	/**
+	 * Adds points to the tree. The points are the ones returned by
+	 * {@link #getPath(int, int[])} afterwards.
+	 *
+	 * @param keys
+	 *            the paths of the points in the format of
+	 *            {@link ALOCIQuadTree#ALOCIQuadTree(long[], int, int, int)}
+	 * @param words
+	 *            the number of words of a key
+	 */
+	public void add(long[] keys, int words) {
+		int n = keys.length / words;
+		leaves = new int[n];
+		int[] path = new int[levels + 1];
+		long[] childCode = new long[codeWords];
+		for (int i = 0; i < n; i++) {
+			path[0] = 0;
+			count[0]++;
+			int bit = 0;
+			for (int l = 0; l < levels; l++) {
+				Arrays.fill(childCode, 0);
+				for (int d = 0; d < dimensions; d++, bit++) {
+					long word = keys[i * words + (bit >>> 6)];
+					if ((word & (1L << (63 - (bit & 63)))) != 0)
+						childCode[d >>> 6] |= 1L << (d & 63);
+				}
+				path[l + 1] = getOrCreateChild(path[l], childCode);
+				count[path[l + 1]]++;
+			}
+			// each count on the path increased from c-1 to c
+			for (int l = alpha; l <= levels; l++) {
+				double c = count[path[l]];
+				int ancestor = path[l - alpha];
+				squaredSum[ancestor] += 2 * c - 1;
+				cubedSum[ancestor] += 3 * c * c - 3 * c + 1;
+			}
+			leaves[i] = path[levels];
+		}
+	}
+
+	public int getNumberOfPoints() {
+		return count[0];
+	}
+
+	public int getCount(int level, int cell) {
+		return count[cell];
+	}
+
+	public double getSquaredSum(int level, int cell) {
+		return squaredSum[cell];
+	}
+
+	public double getCubedSum(int level, int cell) {
+		return cubedSum[cell];
+	}
+
+	public void getPath(int point, int[] path) {
+		int node = leaves[point];
+		for (int l = levels; l >= 0; l--) {
+			path[l] = node;
+			node = parent[node];
+		}
+	}
+
+	private int getOrCreateChild(int node, long[] childCode) {
+		int mask = table.length - 1;
+		int slot = hash(node, childCode) & mask;
+		for (; table[slot] >= 0; slot = (slot + 1) & mask) {
+			int child = table[slot];
+			if (parent[child] == node && sameCode(child, childCode))
+				return child;
+		}
+
+		int child = numberOfNodes++;
+		if (child == parent.length)
+			grow();
+		parent[child] = node;
+		System.arraycopy(childCode, 0, code, child * codeWords, codeWords);
+		if (2 * numberOfNodes > table.length)
+			rehash();
+		else
+			table[slot] = child;
+		return child;
+	}
+
+	private boolean sameCode(int node, long[] childCode) {
+		for (int w = 0; w < codeWords; w++)
+			if (code[node * codeWords + w] != childCode[w])
+				return false;
+		return true;
+	}
+
+	private int hash(int node, long[] childCode) {
+		long h = node;
+		for (int w = 0; w < codeWords; w++)
+			h = 31 * h + childCode[w];
+		h *= 0x9e3779b97f4a7c15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private void grow() {
+		int capacity = 2 * parent.length;
+		parent = Arrays.copyOf(parent, capacity);
+		count = Arrays.copyOf(count, capacity);
+		squaredSum = Arrays.copyOf(squaredSum, capacity);
+		cubedSum = Arrays.copyOf(cubedSum, capacity);
+		code = Arrays.copyOf(code, capacity * codeWords);
+	}
+
+	/**
+	 * Doubles the hash table and inserts all nodes except the root again.
+	 */
+	private void rehash() {
+		table = new int[2 * table.length];
+		Arrays.fill(table, -1);
+		int mask = table.length - 1;
+		long[] childCode = new long[codeWords];
+		for (int node = 1; node < numberOfNodes; node++) {
+			System.arraycopy(code, node * codeWords, childCode, 0, codeWords);
+			int slot = hash(parent[node], childCode) & mask;
+			while (table[slot] >= 0)
+				slot = (slot + 1) & mask;
+			table[slot] = node;
+		}
+	}
+}
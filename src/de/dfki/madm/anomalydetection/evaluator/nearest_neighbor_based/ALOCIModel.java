@@ -0,0 +1,143 @@
+/*
+ *  RapidMiner Anomaly Detection Extension
+ *
+ *  Copyright (C) 2009-2014 by Deutsches Forschungszentrum fuer
+ *  Kuenstliche Intelligenz GmbH or its licensors, as applicable.
+ *
+ *  This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with this software. If not, see <http://www.gnu.org/licenses/.
+ *
+ * Responsible: Markus Goldstein (Markus.Goldstein@dfki.de)
+ *
+ * URL: http://madm.dfki.de/rapidminer/anomalydetection
+ */
+package de.dfki.madm.anomalydetection.evaluator.nearest_neighbor_based;
+
+import com.rapidminer.example.ExampleSet;
+import com.rapidminer.operator.AbstractModel;
+
+/**
+ * This class saves the shifted grids of aLOCI together with the box counts of
+ * all points seen so far. Points evaluated with this model are added to the
+ * counts and scored against all points seen so far, so that aLOCI can be
+ * applied to a stream of example sets without building the quadtrees again.
+ *
+ * The location of the grids is fixed by the first example set. Points of later
+ * example sets lying outside of it are counted in the border cells.
+ *
+ */
+public class ALOCIModel extends AbstractModel {
+
+	private static final long serialVersionUID = 8201957303520480937L;
+
+	private int dimensions, levels, alpha;
+
+	/** The minimum of each dimension the points are moved by **/
+	private double[] min;
+
+	/** The size of the root cell **/
+	private double Rp;
+
+	/** The shift of each grid **/
+	private double[][] grids;
+
+	private ALOCIIncrementalTree[] trees;
+
+	/**
+	 * Creates an empty model, the grids are placed by the first evaluation.
+	 */
+	public ALOCIModel(ExampleSet trainingExampleSet, int dimensions,
+			int numberOfGrids, int levels, int alpha) {
+		super(trainingExampleSet);
+		this.dimensions = dimensions;
+		this.levels = levels;
+		this.alpha = alpha;
+		this.grids = new double[numberOfGrids][];
+		this.trees = new ALOCIIncrementalTree[numberOfGrids];
+	}
+
+	private ALOCIModel(ALOCIModel model) {
+		super(model.getTrainingHeader());
+		dimensions = model.dimensions;
+		levels = model.levels;
+		alpha = model.alpha;
+		min = model.min == null ? null : model.min.clone();
+		Rp = model.Rp;
+		grids = new double[model.grids.length][];
+		for (int g = 0; g < grids.length; g++)
+			if (model.grids[g] != null)
+				grids[g] = model.grids[g].clone();
+		trees = new ALOCIIncrementalTree[model.trees.length];
+		for (int g = 0; g < trees.length; g++)
+			if (model.trees[g] != null)
+				trees[g] = model.trees[g].copy();
+	}
+
+	/**
+	 * Returns a copy of the model, points can be added to it without changing
+	 * this model.
+	 */
+	public ALOCIModel copy() {
+		return new ALOCIModel(this);
+	}
+
+	/**
+	 * Returns true if the model was created with the same parameters.
+	 */
+	public boolean matches(int dimensions, int numberOfGrids, int levels,
+			int alpha) {
+		return this.dimensions == dimensions && grids.length == numberOfGrids
+				&& this.levels == levels && this.alpha == alpha;
+	}
+
+	public boolean isInitialized() {
+		return min != null;
+	}
+
+	/**
+	 * Places the grids and creates their empty quadtrees.
+	 */
+	void initialize(double[] min, double Rp, double[][] grids) {
+		this.min = min;
+		this.Rp = Rp;
+		this.grids = grids;
+		for (int g = 0; g < grids.length; ++g)
+			trees[g] = new ALOCIIncrementalTree(levels, dimensions, alpha);
+	}
+
+	public double[] getMin() {
+		return min;
+	}
+
+	public double getRp() {
+		return Rp;
+	}
+
+	public double[][] getGrids() {
+		return grids;
+	}
+
+	public ALOCIIncrementalTree[] getTrees() {
+		return trees;
+	}
+
+	/** returns the number of points seen so far */
+	public int getNumberOfPoints() {
+		return isInitialized() ? trees[0].getNumberOfPoints() : 0;
+	}
+
+	public ExampleSet apply(ExampleSet exampleSet) {
+		return exampleSet;
+	}
+
+	@Override
+	public String toString() {
+		return getName() + " model with " + grids.length + " grids, "
+				+ levels + " levels and " + getNumberOfPoints() + " points";
+	}
+}
@@ -0,0 +1,297 @@
+/*
+ *  RapidMiner Anomaly Detection Extension
+ *
+ *  Copyright (C) 2009-2014 by Deutsches Forschungszentrum fuer
+ *  Kuenstliche Intelligenz GmbH or its licensors, as applicable.
+ *
+ *  This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with this software. If not, see <http://www.gnu.org/licenses/.
+ *
+ * Responsible: Markus Goldstein (Markus.Goldstein@dfki.de)
+ *
+ * URL: http://madm.dfki.de/rapidminer/anomalydetection
+ */
+package de.dfki.madm.anomalydetection.evaluator.nearest_neighbor_based;
+
+import java.io.Serializable;
+
+/**
+ * The quadtree of one grid of aLOCI stored in primitive arrays.
+ *
+ * Each point is described by the path of cells from the root to its leaf. The
+ * path is a key with one bit per level and dimension, the bits of a level
+ * following the bits of its parent level. Sorting the points by their keys
+ * puts the points of every cell at consecutive positions, so a cell of a level
+ * is a range of positions. For each level the tree stores where the cells
+ * start and the first child of each cell. The number of points in a cell is
+ * the length of its range.
+ *
+ * The keys can have any number of bits, so there is no limit on the number of
+ * dimensions.
+ *
+ * For scoring, the sums of the squared and cubed counts of the cells a fixed
+ * number of levels below each cell can be precomputed by
+ * {@link #computeSums(int)}.
+ *
+ */
+public class ALOCIQuadTree implements ALOCITree, Serializable {
+
+	private static final long serialVersionUID = 3528164570327019416L;
+
+	private int n, levels;
+
+	/** The position of each point in the sorted order **/
+	private int[] position;
+
+	/**
+	 * start[l][c] is the first position of cell c of level l, the last entry
+	 * is the number of points
+	 **/
+	private int[][] start;
+
+	/**
+	 * firstChild[l][c] is the index of the first cell of level l+1 in cell c
+	 * of level l, the last entry is the number of cells of level l+1
+	 **/
+	private int[][] firstChild;
+
+	/** The number of levels between a cell and the cells of its sums **/
+	private int offset;
+
+	/**
+	 * squaredSum[l][c] and cubedSum[l][c] are the sums of the squared and
+	 * cubed counts of the cells of level l+offset inside cell c of level l
+	 **/
+	private double[][] squaredSum, cubedSum;
+
+	/**
+	 * Creates the tree.
+	 *
+	 * @param keys
+	 *            the keys of all points, the key of point i is stored in
+	 *            keys[i*words .. i*words+words-1] with the bits of the first
+	 *            level in the highest bits of the first word
+	 * @param words
+	 *            the number of words of a key
+	 * @param levels
+	 *            the number of levels below the root
+	 * @param dimensions
+	 *            the number of bits of each level
+	 */
+	public ALOCIQuadTree(long[] keys, int words, int levels, int dimensions) {
+		this.n = keys.length / words;
+		this.levels = levels;
+
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+		sort(keys, words, order, 0, n - 1);
+		position = new int[n];
+		for (int i = 0; i < n; i++)
+			position[order[i]] = i;
+
+		// the level in which the cell of position k differs from the one of
+		// position k-1, levels+1 if they share the leaf
+		int[] split = new int[n];
+		int[] numberOfCells = new int[levels + 1];
+		for (int k = 1; k < n; k++) {
+			split[k] = levels + 1;
+			int a = order[k - 1] * words;
+			int b = order[k] * words;
+			for (int w = 0; w < words; w++) {
+				long difference = keys[a + w] ^ keys[b + w];
+				if (difference != 0) {
+					int bit = w * 64 + Long.numberOfLeadingZeros(difference);
+					split[k] = bit / dimensions + 1;
+					break;
+				}
+			}
+			if (split[k] <= levels)
+				numberOfCells[split[k]]++;
+		}
+		numberOfCells[0] = 1;
+		for (int l = 1; l <= levels; l++)
+			numberOfCells[l] += numberOfCells[l - 1];
+
+		start = new int[levels + 1][];
+		for (int l = 0; l <= levels; l++) {
+			int[] current = new int[numberOfCells[l] + 1];
+			int c = 1;
+			for (int k = 1; k < n; k++)
+				if (split[k] <= l)
+					current[c++] = k;
+			current[numberOfCells[l]] = n;
+			start[l] = current;
+		}
+
+		firstChild = new int[levels][];
+		for (int l = 0; l < levels; l++) {
+			int[] current = new int[numberOfCells[l] + 1];
+			int child = 0;
+			for (int c = 0; c < numberOfCells[l]; c++) {
+				while (start[l + 1][child] < start[l][c])
+					child++;
+				current[c] = child;
+			}
+			current[numberOfCells[l]] = numberOfCells[l + 1];
+			firstChild[l] = current;
+		}
+	}
+
+	public int getLevels() {
+		return levels;
+	}
+
+	public int getNumberOfCells(int level) {
+		return start[level].length - 1;
+	}
+
+	/**
+	 * Returns the number of points in the cell of the level.
+	 */
+	public int getCount(int level, int cell) {
+		return start[level][cell + 1] - start[level][cell];
+	}
+
+	/**
+	 * Returns the cell of level+1 containing the point, where cell is the cell
+	 * of the level containing it.
+	 */
+	public int getChild(int point, int level, int cell) {
+		int pos = position[point];
+		int[] childStart = start[level + 1];
+		int low = firstChild[level][cell];
+		int high = firstChild[level][cell + 1] - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (childStart[mid] <= pos)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		return low;
+	}
+
+	public void getPath(int point, int[] path) {
+		path[0] = 0;
+		for (int l = 0; l < levels; l++)
+			path[l + 1] = getChild(point, l, path[l]);
+	}
+
+	/**
+	 * Returns the first cell of level+depth inside the cell of the level. The
+	 * cells inside it range up to the first cell of level+depth inside
+	 * cell+1.
+	 */
+	public int getFirstDescendant(int level, int cell, int depth) {
+		for (int l = level; l < level + depth; l++)
+			cell = firstChild[l][cell];
+		return cell;
+	}
+
+	/**
+	 * Computes the sums of the squared and cubed counts of the cells offset
+	 * levels below each cell. The sum of the counts themselves is the count of
+	 * the cell.
+	 */
+	public void computeSums(int offset) {
+		this.offset = offset;
+		squaredSum = new double[Math.max(0, levels - offset + 1)][];
+		cubedSum = new double[squaredSum.length][];
+		for (int l = 0; l < squaredSum.length; l++) {
+			int cells = getNumberOfCells(l);
+			double[] squared = new double[cells];
+			double[] cubed = new double[cells];
+			int descendant = getFirstDescendant(l, 0, offset);
+			for (int c = 0; c < cells; c++) {
+				int last = getFirstDescendant(l, c + 1, offset);
+				for (; descendant < last; descendant++) {
+					double count = getCount(l + offset, descendant);
+					squared[c] += Math.pow(count, 2);
+					cubed[c] += Math.pow(count, 3);
+				}
+			}
+			squaredSum[l] = squared;
+			cubedSum[l] = cubed;
+		}
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Returns the sum of the squared counts of the cells offset levels below
+	 * the cell of the level.
+	 */
+	public double getSquaredSum(int level, int cell) {
+		return squaredSum[level][cell];
+	}
+
+	/**
+	 * Returns the sum of the cubed counts of the cells offset levels below the
+	 * cell of the level.
+	 */
+	public double getCubedSum(int level, int cell) {
+		return cubedSum[level][cell];
+	}
+
+	/**
+	 * Sorts order[low .. high] by the keys of the points.
+	 */
+	private static void sort(long[] keys, int words, int[] order, int low,
+			int high) {
+		while (high - low > 16) {
+			int pivot = order[(low + high) >>> 1];
+			int i = low;
+			int j = high;
+			while (i <= j) {
+				while (compare(keys, words, order[i], pivot) < 0)
+					i++;
+				while (compare(keys, words, order[j], pivot) > 0)
+					j--;
+				if (i <= j) {
+					int temp = order[i];
+					order[i++] = order[j];
+					order[j--] = temp;
+				}
+			}
+			// recursion on the smaller part
+			if (j - low < high - i) {
+				sort(keys, words, order, low, j);
+				low = i;
+			} else {
+				sort(keys, words, order, i, high);
+				high = j;
+			}
+		}
+		for (int i = low + 1; i <= high; i++) {
+			int current = order[i];
+			int j = i - 1;
+			for (; j >= low && compare(keys, words, order[j], current) > 0; j--)
+				order[j + 1] = order[j];
+			order[j + 1] = current;
+		}
+	}
+
+	/**
+	 * Compares the keys of two points as unsigned numbers.
+	 */
+	private static int compare(long[] keys, int words, int a, int b) {
+		a *= words;
+		b *= words;
+		for (int w = 0; w < words; w++) {
+			// flipping the sign bit gives the unsigned order
+			long x = keys[a + w] ^ Long.MIN_VALUE;
+			long y = keys[b + w] ^ Long.MIN_VALUE;
+			if (x != y)
+				return x < y ? -1 : 1;
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ *  RapidMiner Anomaly Detection Extension
+ *
+ *  Copyright (C) 2009-2014 by Deutsches Forschungszentrum fuer
+ *  Kuenstliche Intelligenz GmbH or its licensors, as applicable.
+ *
+ *  This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with this software. If not, see <http://www.gnu.org/licenses/.
+ *
+ * Responsible: Markus Goldstein (Markus.Goldstein@dfki.de)
+ *
+ * URL: http://madm.dfki.de/rapidminer/anomalydetection
+ */
+package de.dfki.madm.anomalydetection.evaluator.nearest_neighbor_based;
+
+/**
+ * The box counts of the quadtree of one grid of aLOCI as needed for scoring.
+ * A cell is identified by its level and an index within the tree.
+ *
+ */
+public interface ALOCITree {
+
+	/**
+	 * Returns the number of points in the cell of the level.
+	 */
+	public int getCount(int level, int cell);
+
+	/**
+	 * Returns the sum of the squared counts of the cells alpha levels below the
+	 * cell of the level.
+	 */
+	public double getSquaredSum(int level, int cell);
+
+	/**
+	 * Returns the sum of the cubed counts of the cells alpha levels below the
+	 * cell of the level.
+	 */
+	public double getCubedSum(int level, int cell);
+
+	/**
+	 * Finds the cells containing the point.
+	 *
+	 * @param point
+	 *            the index of the point among the points last added to the
+	 *            tree
+	 * @param path
+	 *            receives the cell of each level from the root at index 0 to
+	 *            the leaf at index levels
+	 */
+	public void getPath(int point, int[] path);
+}
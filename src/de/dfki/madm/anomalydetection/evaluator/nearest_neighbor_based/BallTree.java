@@ -0,0 +1,413 @@
+/*
+ *  RapidMiner Anomaly Detection Extension
+ *
+ *  Copyright (C) 2009-2014 by Deutsches Forschungszentrum fuer
+ *  Kuenstliche Intelligenz GmbH or its licensors, as applicable.
+ *
+ *  This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with this software. If not, see <http://www.gnu.org/licenses/.
+ *
+ * Responsible: Markus Goldstein (Markus.Goldstein@dfki.de)
+ *
+ * URL: http://madm.dfki.de/rapidminer/anomalydetection
+ */
+package de.dfki.madm.anomalydetection.evaluator.nearest_neighbor_based;
+
+import java.util.Arrays;
+
+import com.rapidminer.tools.math.similarity.DistanceMeasure;
+import com.rapidminer.tools.math.similarity.numerical.ChebychevNumericalDistance;
+import com.rapidminer.tools.math.similarity.numerical.EuclideanDistance;
+import com.rapidminer.tools.math.similarity.numerical.ManhattanDistance;
+
+/**
+ * A ball tree over the points which answers how many points lie within a
+ * radius around one of the points. Each node stores the summed weight of the
+ * points below it, so that a node lying completely inside the radius is counted
+ * without visiting its points. The tree also finds the nearest point to an
+ * arbitrary query. The pruning needs the triangle inequality, so the tree can
+ * only be used for metric distance measures.
+ *
+ * The distance between two points is always calculated with the point with the
+ * lower index first, so that the tree returns exactly the same distances as a
+ * nested loop over the points.
+ *
+ */
+public class BallTree {
+
+	/** The maximum number of points in a leaf **/
+	private static final int LEAF_SIZE = 16;
+
+	/**
+	 * The relative margin for deciding that a node lies completely inside or
+	 * outside of the radius. Nodes within the margin are visited, so that
+	 * points lying exactly on the radius are decided on their own distance.
+	 **/
+	private static final double MARGIN = 1e-9;
+
+	private double[][] points;
+	private int[] weight;
+	private DistanceMeasure measure;
+
+	/** The indices of the points ordered such that each node is a range **/
+	private int[] order;
+
+	private int numberOfNodes;
+	private double[][] center;
+	private double[] radius;
+	private int[] subtreeWeight;
+	private int[] start;
+	private int[] end;
+	/** The children of the node, -1 for leaves **/
+	private int[] left;
+	private int[] right;
+
+	public BallTree(double[][] points, int[] weight, DistanceMeasure measure) {
+		this.points = points;
+		this.weight = weight;
+		this.measure = measure;
+		int n = points.length;
+		order = new int[n];
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+		int capacity = 2 * (n / LEAF_SIZE + 1);
+		center = new double[capacity][];
+		radius = new double[capacity];
+		subtreeWeight = new int[capacity];
+		start = new int[capacity];
+		end = new int[capacity];
+		left = new int[capacity];
+		right = new int[capacity];
+		if (n > 0)
+			build(0, n);
+	}
+
+	/**
+	 * Creates the tree giving each point the weight 1.
+	 */
+	public BallTree(double[][] points, DistanceMeasure measure) {
+		this(points, ones(points.length), measure);
+	}
+
+	private static int[] ones(int n) {
+		int[] weight = new int[n];
+		Arrays.fill(weight, 1);
+		return weight;
+	}
+
+	/**
+	 * Returns true if the distance measure fulfills the triangle inequality.
+	 */
+	public static boolean supports(DistanceMeasure measure) {
+		return measure instanceof EuclideanDistance
+				|| measure instanceof ManhattanDistance
+				|| measure instanceof ChebychevNumericalDistance;
+	}
+
+	/**
+	 * Returns the summed weight of the points having a distance less than or
+	 * equal to the radius to the point with the given index, including the
+	 * point itself.
+	 */
+	public int count(int index, double radius) {
+		if (radius == Double.POSITIVE_INFINITY)
+			return subtreeWeight[0];
+		return count(0, index, radius);
+	}
+
+	private int count(int node, int index, double r) {
+		double distance = measure.calculateDistance(points[index],
+				center[node]);
+		double margin = MARGIN * (distance + radius[node] + r);
+		if (distance - radius[node] > r + margin)
+			return 0;
+		if (distance + radius[node] < r - margin)
+			return subtreeWeight[node];
+		if (left[node] == -1) {
+			int sum = 0;
+			for (int i = start[node]; i < end[node]; i++) {
+				int current = order[i];
+				if (current == index || distance(index, current) <= r)
+					sum += weight[current];
+			}
+			return sum;
+		}
+		return count(left[node], index, r) + count(right[node], index, r);
+	}
+
+	/**
+	 * Returns the summed weight of the points having a distance less than or
+	 * equal to the radius to the point with the given index, including the
+	 * point itself. Additionally the smallest distances greater than the
+	 * radius are stored in ascending order together with the weights of their
+	 * points, so that the count for a larger radius can be derived from them
+	 * until it passes the last one. Unused entries get the distance positive
+	 * infinity.
+	 *
+	 * @param nextDistances
+	 *            receives the next distances at offset .. offset+length-1
+	 * @param nextWeights
+	 *            receives the weights of the points of the next distances
+	 */
+	public int count(int index, double radius, double[] nextDistances,
+			int[] nextWeights, int offset, int length) {
+		Arrays.fill(nextDistances, offset, offset + length,
+				Double.POSITIVE_INFINITY);
+		if (radius == Double.POSITIVE_INFINITY)
+			return subtreeWeight[0];
+		return count(0, index, radius, nextDistances, nextWeights, offset,
+				offset + length);
+	}
+
+	private int count(int node, int index, double r, double[] nextDistances,
+			int[] nextWeights, int offset, int last) {
+		double distance = measure.calculateDistance(points[index],
+				center[node]);
+		double margin = MARGIN * (distance + radius[node] + r);
+		double largest = nextDistances[last - 1];
+		// the node has no point within the radius and none nearer than the
+		// next distances found so far
+		if (distance - radius[node] > r + margin
+				&& distance - radius[node] > largest + MARGIN
+						* (distance + radius[node] + largest))
+			return 0;
+		if (distance + radius[node] < r - margin)
+			return subtreeWeight[node];
+		if (left[node] == -1) {
+			int sum = 0;
+			for (int i = start[node]; i < end[node]; i++) {
+				int current = order[i];
+				if (current == index) {
+					sum += weight[current];
+					continue;
+				}
+				double currentDistance = distance(index, current);
+				if (currentDistance <= r)
+					sum += weight[current];
+				else if (currentDistance < nextDistances[last - 1]) {
+					// insertion into the sorted next distances
+					int j = last - 1;
+					for (; j > offset && nextDistances[j - 1] > currentDistance; j--) {
+						nextDistances[j] = nextDistances[j - 1];
+						nextWeights[j] = nextWeights[j - 1];
+					}
+					nextDistances[j] = currentDistance;
+					nextWeights[j] = weight[current];
+				}
+			}
+			return sum;
+		}
+		// visiting the nearer child first finds the next distances earlier
+		int first = left[node];
+		int second = right[node];
+		if (measure.calculateDistance(points[index], center[second]) < measure
+				.calculateDistance(points[index], center[first])) {
+			first = right[node];
+			second = left[node];
+		}
+		return count(first, index, r, nextDistances, nextWeights, offset, last)
+				+ count(second, index, r, nextDistances, nextWeights, offset,
+						last);
+	}
+
+	/**
+	 * Finds the points other than the point with the given index having a
+	 * distance less than or equal to the radius to it.
+	 *
+	 * @param distances
+	 *            receives the distances, needs the length of the number of
+	 *            points
+	 * @param indices
+	 *            receives the indices of the points
+	 * @param offset
+	 *            the position of the first point found in the arrays
+	 * @return the position after the last point found
+	 */
+	public int range(int index, double radius, double[] distances,
+			int[] indices, int offset) {
+		return range(0, index, radius, distances, indices, offset);
+	}
+
+	private int range(int node, int index, double r, double[] distances,
+			int[] indices, int size) {
+		double distance = measure.calculateDistance(points[index],
+				center[node]);
+		double margin = MARGIN * (distance + radius[node] + r);
+		if (distance - radius[node] > r + margin)
+			return size;
+		if (left[node] == -1) {
+			for (int i = start[node]; i < end[node]; i++) {
+				int current = order[i];
+				if (current == index)
+					continue;
+				double currentDistance = distance(index, current);
+				if (currentDistance <= r) {
+					distances[size] = currentDistance;
+					indices[size++] = current;
+				}
+			}
+			return size;
+		}
+		size = range(left[node], index, r, distances, indices, size);
+		return range(right[node], index, r, distances, indices, size);
+	}
+
+	/**
+	 * Returns the index of the point nearest to the query or -1 if the tree is
+	 * empty. The distance is calculated as measure(point, query) and ties are
+	 * broken towards the lower index, so the result is the same as the one of
+	 * a linear scan over the points.
+	 */
+	public int nearest(double[] query) {
+		if (numberOfNodes == 0)
+			return -1;
+		double[] best = { Double.POSITIVE_INFINITY, -1 };
+		nearest(0, query, best);
+		return (int) best[1];
+	}
+
+	/**
+	 * best holds the smallest distance found so far and the index of its point
+	 */
+	private void nearest(int node, double[] query, double[] best) {
+		double distance = measure.calculateDistance(query, center[node]);
+		double margin = MARGIN * (distance + radius[node] + best[0]);
+		if (distance - radius[node] > best[0] + margin)
+			return;
+		if (left[node] == -1) {
+			for (int i = start[node]; i < end[node]; i++) {
+				int current = order[i];
+				double currentDistance = measure.calculateDistance(
+						points[current], query);
+				if (best[1] < 0 || currentDistance < best[0]
+						|| (currentDistance == best[0] && current < best[1])) {
+					best[0] = currentDistance;
+					best[1] = current;
+				}
+			}
+			return;
+		}
+		// visiting the nearer child first tightens the bound earlier
+		int first = left[node];
+		int second = right[node];
+		if (measure.calculateDistance(query, center[second]) < measure
+				.calculateDistance(query, center[first])) {
+			first = right[node];
+			second = left[node];
+		}
+		nearest(first, query, best);
+		nearest(second, query, best);
+	}
+
+	private double distance(int i, int j) {
+		return i < j ? measure.calculateDistance(points[i], points[j])
+				: measure.calculateDistance(points[j], points[i]);
+	}
+
+	/**
+	 * Creates the node for the points order[from .. to-1] and its subtree.
+	 *
+	 * @return the index of the node
+	 */
+	private int build(int from, int to) {
+		int node = numberOfNodes++;
+		if (node == radius.length)
+			grow();
+		int dimensions = points[order[from]].length;
+
+		// the center is the mean of the points
+		double[] mean = new double[dimensions];
+		int sum = 0;
+		for (int i = from; i < to; i++) {
+			double[] point = points[order[i]];
+			for (int d = 0; d < dimensions; d++)
+				mean[d] += point[d];
+			sum += weight[order[i]];
+		}
+		for (int d = 0; d < dimensions; d++)
+			mean[d] /= to - from;
+		double maximum = 0;
+		for (int i = from; i < to; i++)
+			maximum = Math.max(maximum,
+					measure.calculateDistance(points[order[i]], mean));
+
+		center[node] = mean;
+		radius[node] = maximum;
+		subtreeWeight[node] = sum;
+		start[node] = from;
+		end[node] = to;
+		left[node] = -1;
+		right[node] = -1;
+
+		if (to - from > LEAF_SIZE) {
+			// splitting at the median of the dimension with the largest spread
+			int splitDimension = 0;
+			double largestSpread = -1;
+			for (int d = 0; d < dimensions; d++) {
+				double min = Double.POSITIVE_INFINITY;
+				double max = Double.NEGATIVE_INFINITY;
+				for (int i = from; i < to; i++) {
+					double value = points[order[i]][d];
+					min = Math.min(min, value);
+					max = Math.max(max, value);
+				}
+				if (max - min > largestSpread) {
+					largestSpread = max - min;
+					splitDimension = d;
+				}
+			}
+			int middle = (from + to) >>> 1;
+			select(from, to - 1, middle, splitDimension);
+			int leftNode = build(from, middle);
+			int rightNode = build(middle, to);
+			left[node] = leftNode;
+			right[node] = rightNode;
+		}
+		return node;
+	}
+
+	/**
+	 * Partially sorts order[low .. high] by the given dimension, such that
+	 * the element at position k is in its sorted position.
+	 */
+	private void select(int low, int high, int k, int dimension) {
+		while (low < high) {
+			double pivot = points[order[(low + high) >>> 1]][dimension];
+			int i = low;
+			int j = high;
+			while (i <= j) {
+				while (points[order[i]][dimension] < pivot)
+					i++;
+				while (points[order[j]][dimension] > pivot)
+					j--;
+				if (i <= j) {
+					int temp = order[i];
+					order[i++] = order[j];
+					order[j--] = temp;
+				}
+			}
+			if (k <= j)
+				high = j;
+			else if (k >= i)
+				low = i;
+			else
+				return;
+		}
+	}
+
+	private void grow() {
+		int capacity = 2 * radius.length;
+		center = Arrays.copyOf(center, capacity);
+		radius = Arrays.copyOf(radius, capacity);
+		subtreeWeight = Arrays.copyOf(subtreeWeight, capacity);
+		start = Arrays.copyOf(start, capacity);
+		end = Arrays.copyOf(end, capacity);
+		left = Arrays.copyOf(left, capacity);
+		right = Arrays.copyOf(right, capacity);
+	}
+}
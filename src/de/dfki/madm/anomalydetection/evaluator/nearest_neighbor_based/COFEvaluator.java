@@ -19,11 +19,14 @@
  */
 package de.dfki.madm.anomalydetection.evaluator.nearest_neighbor_based;
 
+import java.util.Arrays;
 import java.util.LinkedList;
 
 import com.rapidminer.operator.Operator;
 import com.rapidminer.tools.math.similarity.DistanceMeasure;
 
+import de.dfki.madm.anomalydetection.evaluator.ParallelLoop;
+
 /**
  * The class the does the actual COF algorithm.
  * 
@@ -34,6 +37,14 @@ public class COFEvaluator extends KNNEvaluator {
 	private int n;
 	private int k;
 	private boolean newCollection;
+
+	/**
+	 * The neighborhood sets sorted by the index of the neighbors and the
+	 * corresponding distances, only available during the calculation of cof
+	 **/
+	private int[][] sortedNeighbors;
+	private double[][] sortedNeighborDistances;
+
 	public COFEvaluator(KNNCollection knnCollection, 
 			DistanceMeasure measure, boolean parallel, int numberOfThreads, Operator logger) {
 		super(knnCollection, false, measure, parallel, numberOfThreads, logger);
@@ -53,143 +64,235 @@ public class COFEvaluator extends KNNEvaluator {
 	 */
 	private double[] cof() {
 		int n = getN();
-		int k = getKnnCollection().getK();
-		int[][] neighborIndicies = getKnnCollection()
+		final int k = getKnnCollection().getK();
+		final int[][] neighborIndicies = getKnnCollection()
 				.getNeighBorIndiciesSoFar();
-		double[][] neighborDistances = getKnnCollection()
+		final double[][] neighborDistances = getKnnCollection()
 				.getNeighBorDistanceSoFar();
-		double[][] points = getKnnCollection().getPoints();
-		int[] weight = getKnnCollection().getWeight();
-		LinkedList<Integer>[] kdist = getKnnCollection().getKdistNeighbors();
-		DistanceMeasure measure = getMeasure();
+		final double[][] points = getKnnCollection().getPoints();
+		final int[] weight = getKnnCollection().getWeight();
+		final LinkedList<Integer>[] kdist = getKnnCollection().getKdistNeighbors();
+		final DistanceMeasure measure = getMeasure();
+		int threads = parallel ? numberOfThreads : 1;
 
 		// The array that will contain the average chaining distance
-		double[] acDist = new double[n];
-		double[] cof = new double[n];
+		final double[] acDist = new double[n];
+		final double[] cof = new double[n];
 
-		// attributes used for intermediate calculations
+		// the largest neighborhood, which bounds the size of the buffers
+		int maxSize = 0;
+		for (int i = 0; i < n; i++)
+			maxSize = Math.max(maxSize, k + kdist[i].size());
+		final int bufferSize = maxSize;
 
-		// tempDistances[x] contains the minimum distance to connect the set
-		// already connected to the element with index indicies[x]
-		double[] tempDistances = new double[n];
-		int[] indicies = new int[n];
-
-		int j;
-		int size;
+		indexNeighbors(threads);
 
 		// calculating average chaining distance
 		// The average chaining distance has the following formula
 		// (summation from i=1 to cardinality of 2*(cardinality-i+1) * ei
 		// )/(cardinality *(cardinality-1))
-		for (int i = 0; i < n; i++) {
+		new ParallelLoop() {
+			@Override
+			protected void run(int first, int last, int block) {
+				// attributes used for intermediate calculations, one set per
+				// block
 
-			int cardinality = weight[i] - 1;
+				// tempDistances[x] contains the minimum distance to connect the set
+				// already connected to the element with index indicies[x]
+				double[] tempDistances = new double[bufferSize];
+				int[] indicies = new int[bufferSize];
 
-			size = k + kdist[i].size();
+				int j;
+				int size;
 
-			int minIndex = 0;
+				for (int i = first; i < last; i++) {
 
-			for (j = 0; j < k; j++) {
-				tempDistances[j] = neighborDistances[i][j];
-				indicies[j] = neighborIndicies[i][j];
-				cardinality += weight[neighborIndicies[i][j]];
-			}
+					int cardinality = weight[i] - 1;
 
-			for (int x : kdist[i]) {
-				tempDistances[j] = neighborDistances[i][k - 1];
-				indicies[j] = x;
-				cardinality += weight[x];
-				j++;
-			}
+					size = k + kdist[i].size();
+
+					int minIndex = 0;
+
+					for (j = 0; j < k; j++) {
+						tempDistances[j] = neighborDistances[i][j];
+						indicies[j] = neighborIndicies[i][j];
+						cardinality += weight[neighborIndicies[i][j]];
+					}
+
+					for (int x : kdist[i]) {
+						tempDistances[j] = neighborDistances[i][k - 1];
+						indicies[j] = x;
+						cardinality += weight[x];
+						j++;
+					}
 
 			
 
-			double summation = 0;
-			// weighSofar represents (cardinality -i+1) in  the above formula
-			int weightSofar = cardinality - weight[i] + 1;
+					double summation = 0;
+					// weighSofar represents (cardinality -i+1) in  the above formula
+					int weightSofar = cardinality - weight[i] + 1;
       
-			double denominator = cardinality * (cardinality + 1);
-
-			for (int l = 0; l < size; l++) {
-				// in case we have X duplicates of the same point then we will have
-				// the weight of the current edge equal to 2*(weightSofar + (weightSofar-1)+....+
-				// (weightSofar-X+1)) which is equal to the summation of i from
-				// i= weightSoFar-X+1 to weightSofar which is equal  (
-				// weightSOFar*(weightSoFar+1) -
-				// (weighSoFar-X)*(weighSofar-X+1))  let t1
-				// =weightSOfar*(weightSofar+1) and t2 =
-				// (weighSofar-X)*(weighSofar-X+1) then the weight of the
-				// current edge should be equal to t1-t2
-
-				// currentweight = t1
-				int currentweight = weightSofar * (weightSofar + 1);
-
-				// weighSofar = weightSofar -X
-				weightSofar -= weight[indicies[minIndex]];
-
-				// currentweight= currentweight- t2
-				currentweight -= weightSofar * (weightSofar + 1);
-
-				summation += currentweight * tempDistances[minIndex];
-
-				// the index of the point just added to the set
-				int currentIndex = indicies[minIndex];
-
-				// an index of -1 indicates that the point was already reached
-				// and thus shouldn't need to be reached again
-				indicies[minIndex] = -1;
-
-				// This contains the index of the point that is the nearest
-				// neighbor of the set from the set indicies[0..j]
-				minIndex = -1;
-
-				for (j = 0; j < size; j++) {
-					if (indicies[j] == -1)
-						continue;
-
-					double temp = measure.calculateDistance(
-							points[currentIndex], points[indicies[j]]);
-					if (temp < tempDistances[j])
-						tempDistances[j] = temp;
-
-					if (minIndex == -1
-							|| tempDistances[minIndex] > tempDistances[j]
-							|| (tempDistances[minIndex] == tempDistances[j] && indicies[j] < indicies[minIndex])) {
-						// assigns the nearest neighbor if non exists or if
-						// point i is nearer than the current nearest neighbor,
-						// in case they have the same distance ties are broken
-						// by taking the earlier index
-
-						minIndex = j;
+					double denominator = cardinality * (cardinality + 1);
+
+					for (int l = 0; l < size; l++) {
+						// in case we have X duplicates of the same point then we will have
+						// the weight of the current edge equal to 2*(weightSofar + (weightSofar-1)+....+
+						// (weightSofar-X+1)) which is equal to the summation of i from
+						// i= weightSoFar-X+1 to weightSofar which is equal  (
+						// weightSOFar*(weightSoFar+1) -
+						// (weighSoFar-X)*(weighSofar-X+1))  let t1
+						// =weightSOfar*(weightSofar+1) and t2 =
+						// (weighSofar-X)*(weighSofar-X+1) then the weight of the
+						// current edge should be equal to t1-t2
+
+						// currentweight = t1
+						int currentweight = weightSofar * (weightSofar + 1);
+
+						// weighSofar = weightSofar -X
+						weightSofar -= weight[indicies[minIndex]];
+
+						// currentweight= currentweight- t2
+						currentweight -= weightSofar * (weightSofar + 1);
+
+						summation += currentweight * tempDistances[minIndex];
+
+						// the index of the point just added to the set
+						int currentIndex = indicies[minIndex];
+
+						// an index of -1 indicates that the point was already reached
+						// and thus shouldn't need to be reached again
+						indicies[minIndex] = -1;
+
+						// This contains the index of the point that is the nearest
+						// neighbor of the set from the set indicies[0..j]
+						minIndex = -1;
+
+						for (j = 0; j < size; j++) {
+							if (indicies[j] == -1)
+								continue;
+
+							double temp = distance(currentIndex, indicies[j],
+									points, measure);
+							if (temp < tempDistances[j])
+								tempDistances[j] = temp;
+
+							if (minIndex == -1
+									|| tempDistances[minIndex] > tempDistances[j]
+									|| (tempDistances[minIndex] == tempDistances[j] && indicies[j] < indicies[minIndex])) {
+								// assigns the nearest neighbor if non exists or if
+								// point i is nearer than the current nearest neighbor,
+								// in case they have the same distance ties are broken
+								// by taking the earlier index
+
+								minIndex = j;
+							}
+
+						}
+
 					}
+					acDist[i] = summation / denominator;
 
 				}
-
 			}
-			acDist[i] = summation / denominator;
-
-		}
+		}.execute(n, threads);
 
 		// calculating cof
-		for (int i = 0; i < n; i++) {
-
-			int cardinality = weight[i] - 1;
-			double summation = cardinality * acDist[i];
-			for (j = 0; j < k; j++) {
-				int currentIndex = neighborIndicies[i][j];
-				summation += weight[currentIndex] * acDist[currentIndex];
-				cardinality += weight[currentIndex];
+		new ParallelLoop() {
+			@Override
+			protected void run(int first, int last, int block) {
+				for (int i = first; i < last; i++) {
+
+					int cardinality = weight[i] - 1;
+					double summation = cardinality * acDist[i];
+					for (int j = 0; j < k; j++) {
+						int currentIndex = neighborIndicies[i][j];
+						summation += weight[currentIndex] * acDist[currentIndex];
+						cardinality += weight[currentIndex];
+					}
+					for (int x : kdist[i]) {
+						summation += weight[x] * acDist[x];
+						cardinality += weight[x];
+					}
+					cof[i] = cardinality * acDist[i] / summation;
+
+				}
 			}
-			for (int x : kdist[i]) {
-				summation += weight[x] * acDist[x];
-				cardinality += weight[x];
+		}.execute(n, threads);
+
+		sortedNeighbors = null;
+		sortedNeighborDistances = null;
+		return cof;
+
+	}
+
+	/**
+	 * Copies the current neighborhood set of each point including the
+	 * neighbors at the k-distance sorted by the index of the neighbors, so
+	 * that the distance between two points which are neighbors of each other
+	 * can be looked up by binary search.
+	 */
+	private void indexNeighbors(int threads) {
+		int n = getN();
+		final int[][] neighborIndicies = getKnnCollection()
+				.getNeighBorIndiciesSoFar();
+		final double[][] neighborDistances = getKnnCollection()
+				.getNeighBorDistanceSoFar();
+		final int[] number = getKnnCollection().getNumberOfNeighborsSoFar();
+		final LinkedList<Integer>[] kdist = getKnnCollection().getKdistNeighbors();
+		sortedNeighbors = new int[n][];
+		sortedNeighborDistances = new double[n][];
+
+		new ParallelLoop() {
+			@Override
+			protected void run(int first, int last, int block) {
+				for (int i = first; i < last; i++) {
+					int end = number[i];
+					int size = end + kdist[i].size();
+					int[] indicies = new int[size];
+					double[] distances = new double[size];
+					int j = 0;
+					for (; j < end; j++)
+						insert(indicies, distances, j, neighborIndicies[i][j],
+								neighborDistances[i][j]);
+					for (int x : kdist[i])
+						insert(indicies, distances, j++, x,
+								neighborDistances[i][end - 1]);
+					sortedNeighbors[i] = indicies;
+					sortedNeighborDistances[i] = distances;
+				}
 			}
-			cof[i] = cardinality * acDist[i] / summation;
+		}.execute(n, threads);
+	}
 
+	/**
+	 * Inserts the neighbor into the first size elements of the arrays, which
+	 * are sorted by index.
+	 */
+	private static void insert(int[] indicies, double[] distances, int size,
+			int index, double distance) {
+		int j = size;
+		for (; j > 0 && indicies[j - 1] > index; j--) {
+			indicies[j] = indicies[j - 1];
+			distances[j] = distances[j - 1];
 		}
+		indicies[j] = index;
+		distances[j] = distance;
+	}
 
-		return cof;
-
+	/**
+	 * Returns the distance between the two points. If one of the points is in
+	 * the neighborhood set of the other, the distance is taken from the
+	 * neighborhood set instead of being calculated.
+	 */
+	private double distance(int point1, int point2, double[][] points,
+			DistanceMeasure measure) {
+		int position = Arrays.binarySearch(sortedNeighbors[point1], point2);
+		if (position >= 0)
+			return sortedNeighborDistances[point1][position];
+		position = Arrays.binarySearch(sortedNeighbors[point2], point1);
+		if (position >= 0)
+			return sortedNeighborDistances[point2][position];
+		return measure.calculateDistance(points[point1], points[point2]);
 	}
 
 	/**
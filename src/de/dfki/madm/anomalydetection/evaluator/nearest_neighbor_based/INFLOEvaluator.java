@@ -23,6 +23,8 @@ import java.util.LinkedList;
 
 import com.rapidminer.operator.Operator;
 import com.rapidminer.tools.math.similarity.DistanceMeasure;
+
+import de.dfki.madm.anomalydetection.evaluator.ParallelLoop;
 /**
  * The class that implements INFLO algorithm.
  * 
@@ -36,11 +38,13 @@ public class INFLOEvaluator extends KNNEvaluator {
 	public INFLOEvaluator(KNNCollection knnCollection,
 			DistanceMeasure measure, boolean parallel, int numberOfThreads, Operator logger) {
 		super(knnCollection, false, measure, parallel, numberOfThreads, logger);
+		knnCollection.setReverseNeighborsEnabled(true);
 	}
 	public INFLOEvaluator(KNNCollection knnCollection,
 			DistanceMeasure measure, boolean parallel, int numberOfThreads, Operator logger,int n, int k , boolean newCollection) {
 		super(knnCollection, false, measure, parallel, numberOfThreads, logger,n,k,newCollection);
 		this.newCollection = newCollection;
+		knnCollection.setReverseNeighborsEnabled(true);
 	}
 
 	public double [] evaluate() {
@@ -59,62 +63,67 @@ public class INFLOEvaluator extends KNNEvaluator {
 	}
 
 	private double[] inflo() {
-		int[][] neighbors = getKnnCollection().getNeighBorIndiciesSoFar();
-		double[][] distances = getKnnCollection().getNeighBorDistanceSoFar();
-		int[] neighborNumbers = getKnnCollection().getNumberOfNeighborsSoFar();
-		int[] weight = getKnnCollection().getWeight();
-		LinkedList<Integer> [] kdistNeighbors = getKnnCollection().getKdistNeighbors();
+		KNNCollection knnCollection = getKnnCollection();
+		int threads = parallel ? numberOfThreads : 1;
+		if (!knnCollection.hasReverseNeighbors())
+			knnCollection.buildReverseNeighbors(threads);
+		final int[][] neighbors = knnCollection.getNeighBorIndiciesSoFar();
+		final double[][] distances = knnCollection.getNeighBorDistanceSoFar();
+		final int[] neighborNumbers = knnCollection.getNumberOfNeighborsSoFar();
+		final int[] weight = knnCollection.getWeight();
+		final LinkedList<Integer> [] kdistNeighbors = knnCollection.getKdistNeighbors();
+		final int[] reverseStart = knnCollection.getReverseNeighborStart();
+		final int[] reverseNeighbors = knnCollection.getReverseNeighborIndicies();
+		final double[] reverseDistances = knnCollection.getReverseNeighborDistances();
 		int n = getN();
-		double[] inflo = new double[n];
-		
-		// for intermediate work 
-		int[] cardinality = new int[n];
-		double[] summationDensities = new double[n];
-
-		for (int i = 0; i < n; i++) {
-			int end = neighborNumbers[i];
-			double kdist = distances[i][end - 1];
-			
-			cardinality[i]+= weight[i]-1;
-			summationDensities[i]+= (weight[i]-1)* 1/kdist;
-			for (int j = 0; j < end; j++) {
-				int currentIndex = neighbors[i][j];
-				int currentWeight = weight[currentIndex];
-				cardinality[i] += currentWeight;
-				double currentDistance = distances[i][j];
-				double currentKdist = distances[currentIndex][neighborNumbers[currentIndex] - 1];
-
-				summationDensities[i] += currentWeight * 1.0 / currentKdist;
-				if (currentDistance > currentKdist) {
-					cardinality[currentIndex] += weight[i];
-					summationDensities[currentIndex] += weight[i] * 1.0 / kdist;
-
-				}
-			}
-
-			for(int currentIndex: kdistNeighbors[i])
-			{
-				int currentWeight= weight[currentIndex];
-				cardinality[i] += currentWeight;
-				double currentDistance = distances[i][neighborNumbers[i]-1];
-				double currentKdist = distances[currentIndex][neighborNumbers[currentIndex] - 1];
-
-				summationDensities[i] += currentWeight* 1.0 / currentKdist;
-				if (currentDistance > currentKdist) {
-					cardinality[currentIndex] += weight[i];
-					summationDensities[currentIndex] +=  weight[i]* 1.0 / kdist;
-
+		final double[] inflo = new double[n];
+
+		// each point only reads the neighborhood sets and writes its own score,
+		// so the points can be processed in independent blocks
+		new ParallelLoop() {
+			@Override
+			protected void run(int start, int stop, int block) {
+				for (int i = start; i < stop; i++) {
+					int end = neighborNumbers[i];
+					double kdist = distances[i][end - 1];
+
+					// the duplicates of the point itself
+					int cardinality = weight[i]-1;
+					double summationDensities = (weight[i]-1)* 1/kdist;
+
+					// the nearest neighbors
+					for (int j = 0; j < end; j++) {
+						int currentIndex = neighbors[i][j];
+						int currentWeight = weight[currentIndex];
+						cardinality += currentWeight;
+						double currentKdist = distances[currentIndex][neighborNumbers[currentIndex] - 1];
+						summationDensities += currentWeight * 1.0 / currentKdist;
+					}
+
+					for(int currentIndex: kdistNeighbors[i])
+					{
+						int currentWeight= weight[currentIndex];
+						cardinality += currentWeight;
+						double currentKdist = distances[currentIndex][neighborNumbers[currentIndex] - 1];
+						summationDensities += currentWeight* 1.0 / currentKdist;
+					}
+
+					// the reverse nearest neighbors which are not already included
+					// as nearest neighbors
+					for (int j = reverseStart[i]; j < reverseStart[i + 1]; j++) {
+						if (reverseDistances[j] > kdist) {
+							int currentIndex = reverseNeighbors[j];
+							int currentWeight = weight[currentIndex];
+							double currentKdist = distances[currentIndex][neighborNumbers[currentIndex] - 1];
+							cardinality += currentWeight;
+							summationDensities += currentWeight * 1.0 / currentKdist;
+						}
+					}
+
+					inflo[i] = summationDensities * kdist / cardinality;
 				}
-				
 			}
-		}
-
-		for (int i = 0; i < n; i++) {
-			int end = neighborNumbers[i];
-			double kdist = distances[i][end - 1];
-			inflo[i] = summationDensities[i] * kdist / cardinality[i];
-
-		}
+		}.execute(n, threads);
 
 		return inflo;
 
@@ -22,6 +22,8 @@ package de.dfki.madm.anomalydetection.evaluator.nearest_neighbor_based;
 import java.io.Serializable;
 import java.util.LinkedList;
 
+import de.dfki.madm.anomalydetection.evaluator.ParallelLoop;
+
 /**
  * 
  * This class contains all the information for the nearest neighborhood set of
@@ -74,12 +76,47 @@ public class KNNCollection implements Serializable {
 	 **/
 	private int[] weight;
 
-	@SuppressWarnings("unchecked")
+	/**
+	 * The indices of the points which can be neighbors in ascending order. Null
+	 * if all points can be neighbors.
+	 **/
+	private int[] reference;
+
+	/**
+	 * Indicates that the reverse nearest neighbors should be indexed as soon
+	 * as the neighborhood sets are complete.
+	 **/
+	private boolean reverseNeighborsEnabled;
+
+	/**
+	 * The reverse nearest neighbors of point i are stored in
+	 * reverseNeighborIndicies[reverseNeighborStart[i] ..
+	 * reverseNeighborStart[i+1]-1] (compressed sparse rows). Null if the index
+	 * was not built or is outdated.
+	 **/
+	private int[] reverseNeighborStart;
+
+	/** The points having point i in their nearest neighbor set **/
+	private int[] reverseNeighborIndicies;
+
+	/**
+	 * The distance between the reverse neighbor and point i, aligned with
+	 * reverseNeighborIndicies.
+	 **/
+	private double[] reverseNeighborDistances;
+
 	public KNNCollection(int n, int k, double[][] points, int[] weight) {
+		this(n, k, points, weight, false);
+	}
+
+	@SuppressWarnings("unchecked")
+	public KNNCollection(int n, int k, double[][] points, int[] weight,
+			boolean reverseNeighborsEnabled) {
 		this.n = n;
 		this.k = k;
 		this.points = points;
 		this.weight = weight;
+		this.reverseNeighborsEnabled = reverseNeighborsEnabled;
 
 		neighborIndicies = new int[n][k];
 		neighborDistances = new double[n][k];
@@ -123,6 +160,116 @@ public class KNNCollection implements Serializable {
 		return weight;
 	}
 
+	public int[] getReference() {
+		return reference;
+	}
+
+	public void setReference(int[] reference) {
+		this.reference = reference;
+	}
+
+	public boolean isReverseNeighborsEnabled() {
+		return reverseNeighborsEnabled;
+	}
+
+	public void setReverseNeighborsEnabled(boolean reverseNeighborsEnabled) {
+		this.reverseNeighborsEnabled = reverseNeighborsEnabled;
+	}
+
+	public boolean hasReverseNeighbors() {
+		return reverseNeighborStart != null;
+	}
+
+	public int[] getReverseNeighborStart() {
+		return reverseNeighborStart;
+	}
+
+	public int[] getReverseNeighborIndicies() {
+		return reverseNeighborIndicies;
+	}
+
+	public double[] getReverseNeighborDistances() {
+		return reverseNeighborDistances;
+	}
+
+	/**
+	 * Builds the reverse nearest neighbor index from the current neighborhood
+	 * sets including the neighbors at the k-distance. The index is stored in
+	 * compressed sparse rows so that it needs two passes over the neighborhood
+	 * sets and no objects per point.
+	 */
+	public void buildReverseNeighbors() {
+		buildReverseNeighbors(1);
+	}
+
+	/**
+	 * Builds the reverse nearest neighbor index with the given number of
+	 * threads. Each thread counts the reverse neighbors contributed by its
+	 * block of points into its own array. The counts are then reduced into the
+	 * row starts and a write position per block, so that the threads fill the
+	 * rows without synchronization and the rows stay in ascending order.
+	 */
+	public void buildReverseNeighbors(int numberOfThreads) {
+		int numberOfBlocks = ParallelLoop.getNumberOfBlocks(n, numberOfThreads);
+		final int[][] position = new int[numberOfBlocks][n];
+
+		// counting the reverse neighbors of each point per block
+		new ParallelLoop() {
+			@Override
+			protected void run(int start, int end, int block) {
+				int[] count = position[block];
+				for (int i = start; i < end; i++) {
+					for (int j = 0; j < numberOfNeighbors[i]; j++)
+						count[neighborIndicies[i][j]]++;
+					for (int x : kdistNeighbors[i])
+						count[x]++;
+				}
+			}
+		}.execute(n, numberOfThreads);
+
+		// the row starts and the first position of each block in each row
+		int[] start = new int[n + 1];
+		for (int x = 0; x < n; x++) {
+			int current = start[x];
+			for (int block = 0; block < numberOfBlocks; block++) {
+				int count = position[block][x];
+				position[block][x] = current;
+				current += count;
+			}
+			start[x + 1] = current;
+		}
+
+		final int[] indicies = new int[start[n]];
+		final double[] distances = new double[start[n]];
+
+		// filling the rows in ascending order of the reverse neighbors
+		new ParallelLoop() {
+			@Override
+			protected void run(int start, int end, int block) {
+				int[] blockPosition = position[block];
+				for (int i = start; i < end; i++) {
+					for (int j = 0; j < numberOfNeighbors[i]; j++) {
+						int current = blockPosition[neighborIndicies[i][j]]++;
+						indicies[current] = i;
+						distances[current] = neighborDistances[i][j];
+					}
+					if (kdistNeighbors[i].isEmpty())
+						continue;
+					double kdist = neighborDistances[i][numberOfNeighbors[i] - 1];
+					for (int x : kdistNeighbors[i]) {
+						int current = blockPosition[x]++;
+						indicies[current] = i;
+						distances[current] = kdist;
+					}
+				}
+			}
+		}.execute(n, numberOfThreads);
+
+		reverseNeighborStart = start;
+		reverseNeighborIndicies = indicies;
+		reverseNeighborDistances = distances;
+	}
+
 	public void shrink(int shrinkBy){
 		for (int i=0; i< shrinkBy; i++)
 			shrink();
@@ -131,22 +278,48 @@ public class KNNCollection implements Serializable {
 	 * This method shrinks the kNNCollection to k-1
 	 */
 	public void shrink() {
-		k--;
+		reduceK(1);
 		if (k == 0)
 			return;
-		for (int index = 0; index < n; index++) {
-			// reduce the number of distinct neighbors by 1
-			numberOfNeighbors[index]--;
-			// removed index is equal to the old numberofNeighbors -1 which is equal to the new number of neighbors
-			int removedIndex = numberOfNeighbors[index];
-			int newLast = removedIndex - 1;
-			if (neighborDistances[index][newLast] == neighborDistances[index][removedIndex]) {
-				kdistNeighbors[index]
-						.add(neighborIndicies[index][removedIndex]);
-			} else
-				kdistNeighbors[index].clear();
-		}
+		for (int index = 0; index < n; index++)
+			shrinkPoint(index);
+
+	}
 
+	/**
+	 * Reduces k without changing the neighborhood sets. It has to be combined
+	 * with {@link #shrinkPoint(int)} for each point and each step, which
+	 * allows to shrink the neighborhood sets of different points in parallel.
+	 * 
+	 * @param step
+	 *            The neighborhood size is reduced by step.
+	 */
+	public void reduceK(int step) {
+		// the reverse neighbors depend on k
+		reverseNeighborStart = null;
+		reverseNeighborIndicies = null;
+		reverseNeighborDistances = null;
+		k -= step;
+	}
+
+	/**
+	 * Removes the neighbor with the largest distance from the neighborhood set
+	 * of the point. Only the data of this point is changed.
+	 * 
+	 * @param index
+	 *            The index of the point
+	 */
+	public void shrinkPoint(int index) {
+		// reduce the number of distinct neighbors by 1
+		numberOfNeighbors[index]--;
+		// removed index is equal to the old numberofNeighbors -1 which is equal to the new number of neighbors
+		int removedIndex = numberOfNeighbors[index];
+		int newLast = removedIndex - 1;
+		if (neighborDistances[index][newLast] == neighborDistances[index][removedIndex]) {
+			kdistNeighbors[index]
+					.add(neighborIndicies[index][removedIndex]);
+		} else
+			kdistNeighbors[index].clear();
 	}
 
 	/**
@@ -222,11 +395,17 @@ public class KNNCollection implements Serializable {
 		}
 	}
 	public static KNNCollection clone(KNNCollection a){
-		KNNCollection ret = new KNNCollection(a.n,a.k,a.points,a.weight);
+		KNNCollection ret = new KNNCollection(a.n,a.k,a.points,a.weight,a.reverseNeighborsEnabled);
 		ret.neighborIndicies = a.neighborIndicies.clone();
 		ret.neighborDistances = a.neighborDistances.clone(); 
 		ret.numberOfNeighbors = a.numberOfNeighbors.clone();
-		ret.kdistNeighbors = a.kdistNeighbors.clone();
+		// the neighbors at the k-distance change when shrinking
+		for (int i = 0; i < a.n; i++)
+			ret.kdistNeighbors[i].addAll(a.kdistNeighbors[i]);
+		ret.reference = a.reference;
+		ret.reverseNeighborStart = a.reverseNeighborStart;
+		ret.reverseNeighborIndicies = a.reverseNeighborIndicies;
+		ret.reverseNeighborDistances = a.reverseNeighborDistances;
 			return ret;
 	}
 }
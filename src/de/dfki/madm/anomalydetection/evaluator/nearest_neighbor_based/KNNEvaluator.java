@@ -58,8 +58,11 @@ public class KNNEvaluator implements Evaluator {
 		public void run() {
 			if (logger != null)
 				this.logger.logNote("Thread " + start + " " + end + " started!");
+			int[] reference = knnCollection.getReference();
+			int numberOfCandidates = reference == null ? n : reference.length;
 			for (int i = start; i < end; i++) {
-				for (int j = 0; j < n; j++) {
+				for (int c = 0; c < numberOfCandidates; c++) {
+					int j = reference == null ? c : reference[c];
 					if (i == j)
 						continue;
 					if(newCollection){
@@ -188,6 +191,9 @@ public class KNNEvaluator implements Evaluator {
 			KNNParallel();
 		else
 			KNNSeq();
+		if (knnCollection.isReverseNeighborsEnabled()
+				&& !knnCollection.hasReverseNeighbors())
+			knnCollection.buildReverseNeighbors(parallel ? numberOfThreads : 1);
 		if (logger != null)
 			logger.logNote("Time " + (System.currentTimeMillis() - start));
 		return res;
@@ -226,7 +232,10 @@ public class KNNEvaluator implements Evaluator {
 		  }
 		});
 
-		if (knnCollection.getPoints()[0].length < 32) {
+		// the synchronized threads use the symmetry of the distance, which does
+		// not hold for a reference sample
+		if (knnCollection.getPoints()[0].length < 32
+				|| knnCollection.getReference() != null) {
 			// number of elements that each thread should handle
 			int elementsPerThread = n / numberOfThreads;
 
@@ -284,6 +293,10 @@ public class KNNEvaluator implements Evaluator {
 	}
 
 	private void KNNSeq() {
+		if (knnCollection.getReference() != null) {
+			KNNSeqReference();
+			return;
+		}
 		for (int i = 0; i < n; i++) {
 			for (int j = i + 1; j <n; j++) {
 				if(newCollection) {
@@ -302,6 +315,29 @@ public class KNNEvaluator implements Evaluator {
 
 	}
 
+	/**
+	 * Computes the neighborhoods of all points against the reference points
+	 * only.
+	 */
+	private void KNNSeqReference() {
+		int[] reference = knnCollection.getReference();
+		for (int i = 0; i < n; i++) {
+			for (int j : reference) {
+				if (i == j)
+					continue;
+				if (newCollection) {
+					double currentDistance = measure.calculateDistance(
+							knnCollection.getPoints()[i],
+							knnCollection.getPoints()[j]);
+					knnCollection.updateNearestNeighbors(i, j, currentDistance);
+				}
+			}
+			setAnomalyScore(i, knnCollection.getNeighBorDistanceSoFar()[i],
+					knnCollection.getNeighBorIndiciesSoFar()[i], knnCollection
+							.getNumberOfNeighborsSoFar()[i]);
+		}
+	}
+
 	/**
 	 * Method called in case the neighborhood size k is reduced by step in order
 	 * to recalculate the anomaly score.
@@ -25,15 +25,33 @@ import java.util.Arrays;
 import com.rapidminer.tools.math.similarity.DistanceMeasure;
 
 import de.dfki.madm.anomalydetection.evaluator.Evaluator;
+import de.dfki.madm.anomalydetection.evaluator.ParallelLoop;
 
 /**
  * This is the implementation of LOCI (Fast Outlier Detection Using the Local
  * Coorelation Integeral) proposed by S. papdimitriou el al (2003)
  * 
+ * For each point the distances to the points within the maximum radius are
+ * kept sorted in primitive arrays together with the index of the point and the
+ * cumulative weight. The alpha critical distances are derived from these
+ * distances when they are needed.
+ * 
+ * For metric distance measures and a maximum radius a ball tree can be used
+ * instead. Then only the distances of the point currently evaluated are kept
+ * and the counting neighborhood sizes of its neighbors are counted in the
+ * tree, which needs more time but only linear memory. Together with a count the tree returns the
+ * next distances at which it changes, so the counts are moved forward like the
+ * positions in the distances and a neighbor is only counted in the tree again
+ * when alpha r passes the last of them.
+ * 
  * @author Mennatallah Amer
  * 
  */
 public class LOCIEvaluator implements Evaluator {
+
+	/** The number of next distances kept for each neighbor if a tree is used **/
+	private static final int NEXT_DISTANCES = 16;
+
 	private DistanceMeasure measure;
 
 	private double[][] points;
@@ -42,167 +60,427 @@ public class LOCIEvaluator implements Evaluator {
 	
 	private int nmin;
 
+	/** The maximum radius of the sampling neighborhood **/
+	private double maximumRadius;
+
+	/** The maximum size of the sampling neighborhood **/
+	private int nmax;
+
+	private boolean parallel;
+	private int numberOfThreads;
+
 	int [] weight;
+
+	/** The sorted distances to the points within the maximum radius **/
+	private double[][] distances;
+
+	/** The indices of the points corresponding to the distances **/
+	private int[][] neighbors;
+
+	/** The summed weight of the points up to each distance **/
+	private int[][] cardinalities;
+
+	/**
+	 * The tree answering the counting neighborhood sizes, null if they are
+	 * taken from the distances of all points
+	 **/
+	private BallTree tree;
+
 	public LOCIEvaluator(DistanceMeasure measure, double alpha, int nmin , double[][] points, int []weight) {
+		this(measure, alpha, nmin, points, weight, Double.POSITIVE_INFINITY,
+				Integer.MAX_VALUE, false, 1);
+	}
+
+	public LOCIEvaluator(DistanceMeasure measure, double alpha, int nmin,
+			double[][] points, int[] weight, double maximumRadius, int nmax,
+			boolean parallel, int numberOfThreads) {
 		n = points.length;
 		this.points = points;
 		this.nmin= nmin;
 		this.alpha= alpha;
 		this.measure = measure;
 		this.weight=weight;
+		this.maximumRadius = maximumRadius;
+		this.nmax = nmax;
+		this.parallel = parallel;
+		this.numberOfThreads = numberOfThreads;
 	}
 
-	private int find(int start, int end, double distance,
-			DistancePair[] criticalDistances) {
-		int low = start;
-		int high = end-1;
+	/**
+	 * Counts the neighbors in a ball tree instead of keeping the distances of
+	 * all points. The distance measure has to fulfill the triangle inequality,
+	 * see {@link BallTree#supports(DistanceMeasure)}. The tree is only used
+	 * with a maximum radius, as its runtime grows with the square of the
+	 * number of points in the sampling neighborhood of each point.
+	 */
+	public void setUseTree(boolean useTree) {
+		tree = useTree && maximumRadius != Double.POSITIVE_INFINITY ? new BallTree(
+				points, weight, measure) : null;
+	}
+
+	/**
+	 * Returns the position of the last distance of point i which is less than
+	 * or equal to the given distance.
+	 */
+	private int findPosition(int i, double distance) {
+		double[] criticalDistances = distances[i];
+		int low = 0;
+		int high = criticalDistances.length - 1;
 		while (low < high) {
 			int mid = (low + high+1) >> 1;
-			if (criticalDistances[mid].distance <= distance) {
+			if (criticalDistances[mid] <= distance) {
 				low = mid;
 			} else
 				high = mid - 1;
 		}
 
-		return criticalDistances[low].cardinality;
+		return low;
 
 	}
 
-	public double[] evaluate() {
-		// the result will contain MDEF/ SIgmaMDEF the higher this ratio is the
-		// more outling the result is.Lower than or equal 3 is not considered an
-		// outlier
-		double[] result = new double[n];
-		DistancePair[][] criticalDistances = new DistancePair[n][2 * n];
-		int secondDimension = 2 * n;
-		// preprocessing
-		for (int i = 0; i < n; i++) {
-			int firstIndex = i << 1;
-			int secondIndex = firstIndex + 1;
-			int current = secondIndex + 1;
-			// cardinality -2 means that there actually a point
-			criticalDistances[i][firstIndex] = new DistancePair(0, -2, i);
-			// cardinality -1 means that there is no point just alpha critical
-			// distance
-			criticalDistances[i][secondIndex] = new DistancePair(0, -1, -1);
-			for (int j = i + 1; j < n; j++) {
-				// draw back this assumes that the distance measure is symmetric
-				double currentDistance = measure.calculateDistance(points[i],
-						points[j]);
-				double alphaCurrentDistance = currentDistance/ alpha;
-				
-				criticalDistances[i][current++] = new DistancePair(
-						currentDistance, -2, j);
-				criticalDistances[i][current++] = new DistancePair(
-						alphaCurrentDistance, -1, -1);
-
-				criticalDistances[j][firstIndex] = new DistancePair(
-						currentDistance, -2, i);
-				
-				criticalDistances[j][secondIndex] = new DistancePair(
-						alphaCurrentDistance, -1, -1);
-
+	/**
+	 * Calculates the sorted distances of point i to all points within the
+	 * maximum radius. The point itself is the first one with distance 0.
+	 */
+	private void preprocess(int i, double[] distanceBuffer, int[] indexBuffer) {
+		int size = 1;
+		distanceBuffer[0] = 0;
+		indexBuffer[0] = i;
+		if (tree != null && maximumRadius != Double.POSITIVE_INFINITY) {
+			size = tree.range(i, maximumRadius, distanceBuffer, indexBuffer,
+					size);
+		} else for (int j = 0; j < n; j++) {
+			if (j == i)
+				continue;
+			// the distance is always calculated in the same direction, so that
+			// both points get exactly the same distance
+			double currentDistance = i < j ? measure.calculateDistance(
+					points[i], points[j]) : measure.calculateDistance(
+					points[j], points[i]);
+			if (currentDistance <= maximumRadius) {
+				distanceBuffer[size] = currentDistance;
+				indexBuffer[size++] = j;
 			}
-			Arrays.sort(criticalDistances[i]);
-			int cardinality = 0;
+		}
+		double[] currentDistances = Arrays.copyOf(distanceBuffer, size);
+		int[] currentNeighbors = Arrays.copyOf(indexBuffer, size);
+		sort(currentDistances, currentNeighbors, 1, size - 1);
+
+		int[] cardinality = new int[size];
+		int sum = 0;
+		for (int j = 0; j < size; j++) {
+			sum += weight[currentNeighbors[j]];
+			cardinality[j] = sum;
+		}
+		distances[i] = currentDistances;
+		neighbors[i] = currentNeighbors;
+		cardinalities[i] = cardinality;
+	}
+
+	/**
+	 * Calculates the maximum ratio of MDEF and sigma MDEF of point i over all
+	 * critical distances and alpha critical distances up to the maximum radius
+	 * and the maximum size of the sampling neighborhood.
+	 * 
+	 * The radii are processed in ascending order, so the counting neighborhood
+	 * of each sampling neighbor only grows. For each sampling neighbor the
+	 * position of its counting neighborhood size in its sorted distances is
+	 * kept and only moved forward, while the sum and the squared sum of the
+	 * counting neighborhood sizes are updated with the changes.
+	 * 
+	 * @param position
+	 *            buffer for the positions with at least the length of the
+	 *            neighborhood of point i. If a tree is used, the counts are
+	 *            kept instead of the positions.
+	 * @param next
+	 *            the buffers for the next distances of the neighbors if a tree
+	 *            is used, otherwise null
+	 */
+	private double mdef(int i, int[] position, NextDistances next) {
+		double[] criticalDistances = distances[i];
+		int[] currentNeighbors = neighbors[i];
+		int size = criticalDistances.length;
+		double result = 0;
 
-			for (int j = 0; j < secondDimension; j++) {
+		// the sum and the squared sum of n(x, alpha r) over the sampling
+		// neighborhood
+		long sum = 0;
+		long squaredSum = 0;
+		// the number of points in the sampling neighborhood which already
+		// have a position
+		int counted = 0;
 
-				if (criticalDistances[i][j].cardinality == -2) {
-					cardinality+=weight[criticalDistances[i][j].index];
+		// with alpha 0 the alpha critical distances are infinite, so alpha r
+		// is 0 for every critical distance
+		int alphaSize = alpha == 0 ? 0 : size;
+
+		// position of the next critical and alpha critical distance
+		int current = 0;
+		int currentAlpha = 0;
+		while (current < size || currentAlpha < alphaSize) {
+			double r;
+			if (currentAlpha >= alphaSize
+					|| (current < size && criticalDistances[current] <= criticalDistances[currentAlpha] / alpha))
+				r = criticalDistances[current];
+			else
+				r = criticalDistances[currentAlpha] / alpha;
+			if (r > maximumRadius)
+				break;
+			int previous = current;
+			int previousAlpha = currentAlpha;
+			while (current < size && criticalDistances[current] <= r)
+				current++;
+			while (currentAlpha < alphaSize
+					&& criticalDistances[currentAlpha] / alpha <= r)
+				currentAlpha++;
+			// a radius which can not be compared, e.g. NaN, ends the search
+			if (current == previous && currentAlpha == previousAlpha)
+				break;
+
+			int nPR = cardinalities[i][current - 1];
+			if (nPR > nmax)
+				break;
+			if (nPR < nmin)
+				continue;
+
+			// alpha r distance
+			double alphaR = r * alpha;
+
+			// moving the positions of the points already in the sampling
+			// neighborhood forward
+			for (int k = 0; k < counted; k++) {
+				int index = currentNeighbors[k];
+				int oldPosition = position[k];
+				int newPosition;
+				if (tree != null)
+					newPosition = next.count(k, index, oldPosition, alphaR);
+				else {
+					double[] neighborDistances = distances[index];
+					newPosition = oldPosition;
+					while (newPosition + 1 < neighborDistances.length
+							&& neighborDistances[newPosition + 1] <= alphaR)
+						newPosition++;
+				}
+				if (newPosition != oldPosition) {
+					long oldCount = count(index, oldPosition);
+					long newCount = count(index, newPosition);
+					sum += newCount - oldCount;
+					squaredSum += newCount * newCount - oldCount * oldCount;
+					position[k] = newPosition;
 				}
-				criticalDistances[i][j].cardinality = cardinality;
+			}
+			// the points which entered the sampling neighborhood
+			for (; counted < current; counted++) {
+				int index = currentNeighbors[counted];
+				if (tree != null)
+					position[counted] = next.query(counted, index, alphaR);
+				else
+					position[counted] = findPosition(index, alphaR);
+				long count = count(index, position[counted]);
+				sum += count;
+				squaredSum += count * count;
 			}
 
-		}
-		// computation of MDEF
-		for (int i = 0; i < n; i++) {
-			result[i]=0;
-			for (int j = 0; j < secondDimension; j++) {
-				if(  criticalDistances[i][j].cardinality< nmin)
-					continue;
-				if (j != secondDimension - 1
-						&& criticalDistances[i][j].distance == criticalDistances[i][j + 1].distance)
-					continue;
-			
-				// alpha r distance
-				double alphaR = criticalDistances[i][j].distance * alpha;
-				
-				int nPR = criticalDistances[i][j].cardinality;
-
-				int nPRAlpha = find(0, secondDimension, alphaR,
-						criticalDistances[i]);
-
-				
-				
-				double summationNPRALpha = 0.0;
-				// this is the loop I should try to vanish 
-				for (int k = 0; k <= j; k++) {
-					int index = criticalDistances[i][k].index;
-					if (index == -1)
-						continue;
-					int currentNRPAlpa = find(0, secondDimension, alphaR,
-							criticalDistances[index]);
-					summationNPRALpha += currentNRPAlpa;
-
-				}                                                                                                                                                                                                                                          
-				double nHatPRAlpha = summationNPRALpha * 1.0 / nPR;
-				
-				double squaredNPRAlpha = 0.0;
-				
-				for (int k = 0; k <= j; k++) {
-					int index = criticalDistances[i][k].index;
-					if (index == -1)
-						continue;
-					int currentNRPAlpa = find(0, secondDimension, alphaR,
-							criticalDistances[index]);
-					double delta = currentNRPAlpa - nHatPRAlpha;
-					
-					squaredNPRAlpha += delta*delta;
-					
-
-				}       
-			
-				double sigmaPRAlpha = Math.sqrt(squaredNPRAlpha
-						/ nPR);
-				
-				double MDEF = 1.0 - nPRAlpha / nHatPRAlpha;
-				double sigmaMDEF = sigmaPRAlpha / nHatPRAlpha;
-				double currentRes;
-				if (sigmaMDEF==0)
-					currentRes= 0;
-				else currentRes= MDEF / sigmaMDEF;
-				if(currentRes> result[i])
-				result[i] =currentRes;
-				
+			int nPRAlpha = count(i, position[0]);
+
+			double nHatPRAlpha = sum * 1.0 / nPR;
+
+			// the summation of (n(x, alpha r) - nHat)^2 equals
+			// squaredSum - nHat * (2 * sum - nHat * current)
+			double sigmaMDEF;
+			if (isConstant(sum, squaredSum, current, nPR))
+				sigmaMDEF = 0;
+			else {
+				double squaredNPRAlpha = Math.max(0, squaredSum
+						- nHatPRAlpha * (2.0 * sum - nHatPRAlpha * current));
+				double sigmaPRAlpha = Math.sqrt(squaredNPRAlpha / nPR);
+				sigmaMDEF = sigmaPRAlpha / nHatPRAlpha;
 			}
 			
+			double MDEF = 1.0 - nPRAlpha / nHatPRAlpha;
+			double currentRes;
+			if (sigmaMDEF==0)
+				currentRes= 0;
+			else currentRes= MDEF / sigmaMDEF;
+			if(currentRes> result)
+				result =currentRes;
 		}
-
 		return result;
 	}
 
-	
-}
+	/**
+	 * The next distances of the neighbors in the sampling neighborhood of the
+	 * point currently evaluated with a tree, NEXT_DISTANCES for each neighbor.
+	 */
+	private class NextDistances {
+		private double[] distances = new double[n * NEXT_DISTANCES];
+		private int[] weights = new int[n * NEXT_DISTANCES];
+		/** The position of the first next distance not counted yet **/
+		private int[] first = new int[n];
+
+		/**
+		 * Counts the neighborhood of the neighbor k with the given index in the
+		 * tree and keeps its next distances.
+		 */
+		int query(int k, int index, double radius) {
+			first[k] = 0;
+			return tree.count(index, radius, distances, weights, k
+					* NEXT_DISTANCES, NEXT_DISTANCES);
+		}
 
-class DistancePair implements Comparable<DistancePair> {
-	double distance;
-	int cardinality;
-	int index;
+		/**
+		 * Returns the count of the neighbor k for the larger radius from its
+		 * previous count, the tree is only queried again if all of its next
+		 * distances are passed.
+		 */
+		int count(int k, int index, int count, double radius) {
+			int offset = k * NEXT_DISTANCES;
+			int j = first[k];
+			while (j < NEXT_DISTANCES && distances[offset + j] <= radius)
+				count += weights[offset + j++];
+			if (j == NEXT_DISTANCES)
+				return query(k, index, radius);
+			first[k] = j;
+			return count;
+		}
+	}
 
-	public DistancePair(double distance, int cardinality, int index) {
-		this.distance = distance;
-		this.cardinality = cardinality;
-		this.index = index;
+	/**
+	 * Returns the counting neighborhood size of the point for the given
+	 * position in its distances, or the position itself if a tree is used.
+	 */
+	private int count(int index, int position) {
+		return tree != null ? position : cardinalities[index][position];
 	}
 
-	@Override
-	public int compareTo(DistancePair arg0) {
-		if (distance < arg0.distance)
-			return -1;
-		if (distance > arg0.distance)
-			return 1;
-		return cardinality - arg0.cardinality;
+	/**
+	 * Returns true if all counts are equal to their average, which is the
+	 * case if the deviation is exactly zero. This can only happen if the
+	 * sampling neighborhood has no duplicates.
+	 */
+	private static boolean isConstant(long sum, long squaredSum, int count,
+			int nPR) {
+		if (nPR != count || sum % count != 0)
+			return false;
+		return squaredSum == sum / count * sum;
 	}
 
+	public double[] evaluate() {
+		// the result will contain MDEF/ SIgmaMDEF the higher this ratio is the
+		// more outling the result is.Lower than or equal 3 is not considered an
+		// outlier
+		final double[] result = new double[n];
+		distances = new double[n][];
+		neighbors = new int[n][];
+		cardinalities = new int[n][];
+		int threads = parallel ? numberOfThreads : 1;
+
+		// with a tree only the distances of the point currently evaluated are
+		// needed
+		if (tree != null) {
+			new ParallelLoop() {
+				@Override
+				protected void run(int start, int end, int block) {
+					double[] distanceBuffer = new double[n];
+					int[] indexBuffer = new int[n];
+					int[] position = new int[n];
+					NextDistances next = new NextDistances();
+					for (int i = start; i < end; i++) {
+						preprocess(i, distanceBuffer, indexBuffer);
+						result[i] = mdef(i, position, next);
+						distances[i] = null;
+						neighbors[i] = null;
+						cardinalities[i] = null;
+					}
+				}
+			}.execute(n, threads);
+			distances = null;
+			neighbors = null;
+			cardinalities = null;
+			return result;
+		}
+
+		// preprocessing
+		new ParallelLoop() {
+			@Override
+			protected void run(int start, int end, int block) {
+				double[] distanceBuffer = new double[n];
+				int[] indexBuffer = new int[n];
+				for (int i = start; i < end; i++)
+					preprocess(i, distanceBuffer, indexBuffer);
+			}
+		}.execute(n, threads);
+
+		// computation of MDEF
+		new ParallelLoop() {
+			@Override
+			protected void run(int start, int end, int block) {
+				int[] position = new int[n];
+				for (int i = start; i < end; i++)
+					result[i] = mdef(i, position, null);
+			}
+		}.execute(n, threads);
+
+		distances = null;
+		neighbors = null;
+		cardinalities = null;
+		return result;
+	}
+
+	/**
+	 * Sorts the distances from index low to high inclusive ascending and
+	 * applies the same permutation to the indices.
+	 */
+	private static void sort(double[] distances, int[] indices, int low,
+			int high) {
+		while (high - low > 16) {
+			int mid = (low + high) >>> 1;
+			// median of three as pivot
+			if (distances[mid] < distances[low])
+				swap(distances, indices, mid, low);
+			if (distances[high] < distances[low])
+				swap(distances, indices, high, low);
+			if (distances[high] < distances[mid])
+				swap(distances, indices, high, mid);
+			double pivot = distances[mid];
+			int i = low;
+			int j = high;
+			while (i <= j) {
+				while (distances[i] < pivot)
+					i++;
+				while (distances[j] > pivot)
+					j--;
+				if (i <= j)
+					swap(distances, indices, i++, j--);
+			}
+			// recursion on the smaller part
+			if (j - low < high - i) {
+				sort(distances, indices, low, j);
+				low = i;
+			} else {
+				sort(distances, indices, i, high);
+				high = j;
+			}
+		}
+		for (int i = low + 1; i <= high; i++) {
+			double distance = distances[i];
+			int index = indices[i];
+			int j = i - 1;
+			for (; j >= low && distances[j] > distance; j--) {
+				distances[j + 1] = distances[j];
+				indices[j + 1] = indices[j];
+			}
+			distances[j + 1] = distance;
+			indices[j + 1] = index;
+		}
+	}
+
+	private static void swap(double[] distances, int[] indices, int i, int j) {
+		double distance = distances[i];
+		distances[i] = distances[j];
+		distances[j] = distance;
+		int index = indices[i];
+		indices[i] = indices[j];
+		indices[j] = index;
+	}
 }
@@ -19,13 +19,13 @@
  */
 package de.dfki.madm.anomalydetection.evaluator.nearest_neighbor_based;
 
-import java.util.LinkedList;
-
 import com.rapidminer.example.ExampleSet;
 import com.rapidminer.operator.Operator;
 import com.rapidminer.operator.ports.OutputPort;
 import com.rapidminer.tools.math.similarity.DistanceMeasure;
 
+import de.dfki.madm.anomalydetection.evaluator.ParallelLoop;
+
 /**
  * This class is where the LOF algorithm is implemented.
  * 
@@ -35,6 +35,8 @@ import com.rapidminer.tools.math.similarity.DistanceMeasure;
 public class LOFEvaluator extends KNNEvaluator {
 	public KNNCollection savedCollection;
 	private int minK;
+	/** The lrd for each MinPts, null if the lrd should not be kept **/
+	private double[][] lrdCache;
 	public LOFEvaluator(int minK, KNNCollection knnCollection,
 			DistanceMeasure measure, boolean parallel, int numberOfthreads, Operator logger) {
 		super(knnCollection, false, measure, parallel, numberOfthreads, logger);
@@ -57,9 +59,34 @@ public class LOFEvaluator extends KNNEvaluator {
 
 	}
 
+	/**
+	 * Sets the array the lrd of each MinPts are kept in. The lrd for MinPts k
+	 * is stored at index k-1 and entries which are not null are used instead
+	 * of calculating the lrd. The array needs at least the length of the
+	 * neighborhood size of the collection. If a cache is set, a copy of a new
+	 * collection is saved before it is shrunk.
+	 */
+	public void setLrdCache(double[][] lrdCache) {
+		this.lrdCache = lrdCache;
+	}
+
+	public double[][] getLrdCache() {
+		return lrdCache;
+	}
+
+	/**
+	 * Returns the copy of the new collection before it was shrunk, or null if
+	 * no lrd cache was set or the collection was not new.
+	 */
+	public KNNCollection getSavedCollection() {
+		return savedCollection;
+	}
+
 	@Override
 	public double[] evaluate() {
 		super.evaluate();
+		if (lrdCache != null && newCollection)
+			savedCollection = KNNCollection.clone(getKnnCollection());
 	
 		double[] lof = lof(); 
 		return lof;
@@ -75,80 +102,135 @@ public class LOFEvaluator extends KNNEvaluator {
 	}
 	
 	
-	private double [] lof(){
-		double [] lof = new double[getN()];
-		double [] lrd= new double[getN()];
-		
-		int [] weight = getKnnCollection().getWeight();
-		int[][] neighborIndices = getKnnCollection().getNeighBorIndiciesSoFar();
-		double [][] neighborDistance = getKnnCollection().getNeighBorDistanceSoFar();	
-		LinkedList<Integer>[] kdistNeighbors = getKnnCollection().getKdistNeighbors();
-		
-		int n = getN();
-		int end = minK-1;
-		int currentK =getKnnCollection().getK()-1;
-		
-		// for each k in the range of MinPtsLB to MinPtsUB
-		for (; currentK >= end; currentK-- ) {
-			// calculate lrd for each point 
-			for (int i=0; i< n ; i++ ){
-				int cardinality= weight[i]-1;
-				double sumReachability = cardinality * neighborDistance[i][currentK];
-				
-				for (int j=0; j<= currentK ; j++)
-				{
-					int currentIndex = neighborIndices[i][j];
-					int weightNeighbor = weight[currentIndex];
-					sumReachability+= weightNeighbor* Math.max(neighborDistance[i][j], neighborDistance[currentIndex][currentK]); 
-					cardinality+= weightNeighbor;
-				}
-				
+	/**
+	 * Calculates the maximum LOF over the range of MinPts. The points are split
+	 * into blocks which are processed by their own thread. For each MinPts a
+	 * thread calculates the LOF of its points, shrinks their neighborhoods and
+	 * calculates their lrd for the next MinPts. The lrd of two successive
+	 * MinPts are stored in different arrays, so that the threads only have to
+	 * wait for each other once per MinPts, which is done by running one
+	 * parallel loop per MinPts. If a lrd cache is set, the lrd of
+	 * every MinPts is kept in it and lrd already in the cache are not
+	 * calculated again.
+	 */
+	private double[] lof() {
+		final int n = getN();
+		final double[] lof = new double[n];
+		final KNNCollection knnCollection = getKnnCollection();
+		final int end = minK - 1;
+		final int startK = knnCollection.getK() - 1;
+		int threads = parallel ? numberOfThreads : 1;
 
-				for (int currentIndex: kdistNeighbors[i]){
-					int weightNeighbor = weight[currentIndex];
-					sumReachability+= weightNeighbor* Math.max(neighborDistance[i][currentK], neighborDistance[currentIndex][currentK]); 
-					cardinality+= weightNeighbor; 
-					
-				}
-				lrd[i] = cardinality/ sumReachability;
-				
+		// lrd[currentK] holds the lrd for the neighborhood size currentK+1
+		final double[][] lrd;
+		final boolean[] cached = new boolean[startK + 1];
+		if (lrdCache != null) {
+			lrd = lrdCache;
+			for (int currentK = end; currentK <= startK; currentK++) {
+				cached[currentK] = lrd[currentK] != null;
+				if (!cached[currentK])
+					lrd[currentK] = new double[n];
 			}
-			
-			// calculate lof for each point
-			for (int i=0; i< n ; i++){
-				int cardinality= weight[i]-1;
-				double sumlrd= cardinality * lrd[i];
-				
-				for (int j=0; j<= currentK ; j++)
-				{
-					int currentIndex = neighborIndices[i][j];
-					int weightNeighbor = weight[currentIndex];
-					sumlrd+= weightNeighbor* lrd[currentIndex]; 
-					cardinality+= weightNeighbor;
+		} else {
+			lrd = new double[startK + 1][];
+			double[][] buffer = { new double[n], new double[n] };
+			for (int currentK = end; currentK <= startK; currentK++)
+				lrd[currentK] = buffer[currentK % 2];
+		}
+
+		if (!cached[startK])
+			new ParallelLoop() {
+				@Override
+				protected void run(int start, int stop, int block) {
+					for (int i = start; i < stop; i++)
+						lrd[startK][i] = lrd(i, startK);
 				}
-							
-				for (int currentIndex: kdistNeighbors[i]){
-					int weightNeighbor = weight[currentIndex];
-					sumlrd+= weightNeighbor* lrd[currentIndex]; 
-					cardinality+= weightNeighbor; 
-					
+			}.execute(n, threads);
+
+		// for each k in the range of MinPtsLB to MinPtsUB
+		for (int k = startK; k >= end; k--) {
+			final int currentK = k;
+			final double[] currentLrd = lrd[currentK];
+			new ParallelLoop() {
+				@Override
+				protected void run(int start, int stop, int block) {
+					for (int i = start; i < stop; i++) {
+						double tempLOF = lof(i, currentK, currentLrd);
+						// set LOF to the maximum
+						if (tempLOF > lof[i])
+							lof[i] = tempLOF;
+					}
+					// shrink the neighborhoods to size k-1
+					if (currentK > 0)
+						for (int i = start; i < stop; i++)
+							knnCollection.shrinkPoint(i);
+					if (currentK > end && !cached[currentK - 1])
+						for (int i = start; i < stop; i++)
+							lrd[currentK - 1][i] = lrd(i, currentK - 1);
 				}
-				double tempLOF = sumlrd/(cardinality* lrd[i]);
-			
-				// set LOF to the maximum
-				if(tempLOF> lof[i])
-					lof[i]= tempLOF;
-				
-			}
-			
-			// shrink the KNNcollection to size k-1
-			getKnnCollection().shrink();
-		
-			
+			}.execute(n, threads);
 		}
+		knnCollection.reduceK(startK - end + 1);
+
 		return lof;
-		
 	}
-	
+
+	/**
+	 * Calculates the local reachability density of point i for the
+	 * neighborhood size currentK+1.
+	 */
+	private double lrd(int i, int currentK) {
+		int[] weight = getKnnCollection().getWeight();
+		int[] neighborIndices = getKnnCollection().getNeighBorIndiciesSoFar()[i];
+		double[][] neighborDistance = getKnnCollection()
+				.getNeighBorDistanceSoFar();
+
+		int cardinality = weight[i] - 1;
+		double sumReachability = cardinality * neighborDistance[i][currentK];
+
+		for (int j = 0; j <= currentK; j++) {
+			int currentIndex = neighborIndices[j];
+			int weightNeighbor = weight[currentIndex];
+			sumReachability += weightNeighbor
+					* Math.max(neighborDistance[i][j],
+							neighborDistance[currentIndex][currentK]);
+			cardinality += weightNeighbor;
+		}
+
+		for (int currentIndex : getKnnCollection().getKdistNeighbors()[i]) {
+			int weightNeighbor = weight[currentIndex];
+			sumReachability += weightNeighbor
+					* Math.max(neighborDistance[i][currentK],
+							neighborDistance[currentIndex][currentK]);
+			cardinality += weightNeighbor;
+		}
+		return cardinality / sumReachability;
+	}
+
+	/**
+	 * Calculates the LOF of point i for the neighborhood size currentK+1 from
+	 * the lrd of all points.
+	 */
+	private double lof(int i, int currentK, double[] lrd) {
+		int[] weight = getKnnCollection().getWeight();
+		int[] neighborIndices = getKnnCollection().getNeighBorIndiciesSoFar()[i];
+
+		int cardinality = weight[i] - 1;
+		double sumlrd = cardinality * lrd[i];
+
+		for (int j = 0; j <= currentK; j++) {
+			int currentIndex = neighborIndices[j];
+			int weightNeighbor = weight[currentIndex];
+			sumlrd += weightNeighbor * lrd[currentIndex];
+			cardinality += weightNeighbor;
+		}
+
+		for (int currentIndex : getKnnCollection().getKdistNeighbors()[i]) {
+			int weightNeighbor = weight[currentIndex];
+			sumlrd += weightNeighbor * lrd[currentIndex];
+			cardinality += weightNeighbor;
+		}
+		return sumlrd / (cardinality * lrd[i]);
+	}
 
 }
\ No newline at end of file
@@ -0,0 +1,59 @@
+/*
+ *  RapidMiner Anomaly Detection Extension
+ *
+ *  Copyright (C) 2009-2014 by Deutsches Forschungszentrum fuer
+ *  Kuenstliche Intelligenz GmbH or its licensors, as applicable.
+ *
+ *  This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with this software. If not, see <http://www.gnu.org/licenses/.
+ *
+ * Responsible: Markus Goldstein (Markus.Goldstein@dfki.de)
+ *
+ * URL: http://madm.dfki.de/rapidminer/anomalydetection
+ */
+package de.dfki.madm.anomalydetection.evaluator.nearest_neighbor_based;
+
+import com.rapidminer.example.ExampleSet;
+import com.rapidminer.tools.math.similarity.DistanceMeasure;
+
+/**
+ * This class saves the knnCollection of the largest MinPts together with the
+ * local reachability densities already calculated by LOF. A LOF operator
+ * using this model for a range of MinPts within the saved neighborhood size
+ * neither searches the nearest neighbors nor calculates the lrd again.
+ * 
+ */
+public class LOFModel extends KNNCollectionModel {
+
+	private static final long serialVersionUID = -3016597436641720934L;
+
+	/**
+	 * The lrd for MinPts k at index k-1, null if it was not calculated yet
+	 **/
+	private double[][] lrd;
+
+	public LOFModel(ExampleSet trainingExampleSet, KNNCollection col,
+			DistanceMeasure measure, double[][] lrd) {
+		super(trainingExampleSet, col, measure);
+		this.lrd = lrd;
+	}
+
+	/** returns the lrd for each MinPts */
+	public double[][] getLrd() {
+		return lrd;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder cached = new StringBuilder();
+		for (int i = 0; i < lrd.length; i++)
+			if (lrd[i] != null)
+				cached.append(cached.length() == 0 ? "" : ", ").append(i + 1);
+		return super.toString() + " and lrd for MinPts " + cached;
+	}
+}
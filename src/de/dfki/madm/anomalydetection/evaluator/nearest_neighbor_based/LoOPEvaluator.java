@@ -24,6 +24,8 @@ import java.util.LinkedList;
 import com.rapidminer.operator.Operator;
 import com.rapidminer.tools.math.similarity.DistanceMeasure;
 
+import de.dfki.madm.anomalydetection.evaluator.ParallelLoop;
+
 /**
  * The class that implements LoOP algorithm.
  * 
@@ -77,74 +79,94 @@ public class LoOPEvaluator extends KNNEvaluator {
 	 */
 	private double[] LoOp() {
 		int n = getN();
-		int[][] neighborIndicies = getKnnCollection()
+		final int[][] neighborIndicies = getKnnCollection()
 				.getNeighBorIndiciesSoFar();
-		double[][] neighborDistances = getKnnCollection()
+		final double[][] neighborDistances = getKnnCollection()
 				.getNeighBorDistanceSoFar();
-		int[] number = getKnnCollection().getNumberOfNeighborsSoFar();
-		int[] weight = getKnnCollection().getWeight();
-		LinkedList<Integer>[] kdistNeighbor = getKnnCollection()
+		final int[] number = getKnnCollection().getNumberOfNeighborsSoFar();
+		final int[] weight = getKnnCollection().getWeight();
+		final LinkedList<Integer>[] kdistNeighbor = getKnnCollection()
 				.getKdistNeighbors();
+		int threads = parallel ? numberOfThreads : 1;
 
-		double[] pdist = new double[n];
+		final double[] pdist = new double[n];
 		double sqrt2 = Math.sqrt(2.0);
 
 		// calcualating pdist
-		for (int i = 0; i < n; i++) {
-			int end = number[i];
-			int cardinality = weight[i] - 1;
-			double squaredSum = 0.0;
-			int start = 0;
-			for (int j = start; j < end; j++) {
-				int size = weight[neighborIndicies[i][j]];
-				double dist = neighborDistances[i][j];
-				cardinality += size;
-				squaredSum += size * dist * dist;
-
+		new ParallelLoop() {
+			@Override
+			protected void run(int first, int last, int block) {
+				for (int i = first; i < last; i++) {
+					int end = number[i];
+					int cardinality = weight[i] - 1;
+					double squaredSum = 0.0;
+					int start = 0;
+					for (int j = start; j < end; j++) {
+						int size = weight[neighborIndicies[i][j]];
+						double dist = neighborDistances[i][j];
+						cardinality += size;
+						squaredSum += size * dist * dist;
+
+					}
+
+					for (int currentIndex : kdistNeighbor[i]) {
+						squaredSum += weight[currentIndex]
+								* neighborDistances[i][end - 1]
+								* neighborDistances[i][end - 1];
+						cardinality += weight[currentIndex];
+					}
+					pdist[i] = lambda * Math.sqrt(squaredSum / cardinality);
+
+				}
 			}
-
-			for (int currentIndex : kdistNeighbor[i]) {
-				squaredSum += weight[currentIndex]
-						* neighborDistances[i][end - 1]
-						* neighborDistances[i][end - 1];
-				cardinality += weight[currentIndex];
+		}.execute(n, threads);
+
+		final double[] PLOF = new double[n];
+
+		// calculating plof, the squared plof are summed up afterwards in the
+		// order of the points, independent of the threads
+		final double[] squaredPLOF = new double[n];
+		new ParallelLoop() {
+			@Override
+			protected void run(int first, int last, int block) {
+				for (int i = first; i < last; i++) {
+					int start = 0;
+					int end = number[i];
+					int cardinality = weight[i] - 1;
+					double sumPDist = cardinality * pdist[i];
+
+					for (int j = start; j < end; j++) {
+						int size = weight[neighborIndicies[i][j]];
+						cardinality += size;
+						sumPDist += size * pdist[neighborIndicies[i][j]];
+					}
+
+					for (int currentIndex : kdistNeighbor[i]) {
+						sumPDist += weight[currentIndex] * pdist[currentIndex];
+						cardinality += weight[currentIndex];
+					}
+
+					PLOF[i] = cardinality * pdist[i] / sumPDist - 1;
+					squaredPLOF[i] = PLOF[i] * PLOF[i];
+
+				}
 			}
-			pdist[i] = lambda * Math.sqrt(squaredSum / cardinality);
-
-		}
-
-		double[] PLOF = new double[n];
-
-		// calculating plof
+		}.execute(n, threads);
 		double sumSequaredPLOF = 0.0;
-		for (int i = 0; i < n; i++) {
-			int start = 0;
-			int end = number[i];
-			int cardinality = weight[i] - 1;
-			double sumPDist = cardinality * pdist[i];
-
-			for (int j = start; j < end; j++) {
-				int size = weight[neighborIndicies[i][j]];
-				cardinality += size;
-				sumPDist += size * pdist[neighborIndicies[i][j]];
-			}
-
-			for (int currentIndex : kdistNeighbor[i]) {
-				sumPDist += weight[currentIndex] * pdist[currentIndex];
-				cardinality += weight[currentIndex];
-			}
-
-			PLOF[i] = cardinality * pdist[i] / sumPDist - 1;
-			sumSequaredPLOF += PLOF[i] * PLOF[i];
-
-		}
+		for (int i = 0; i < n; i++)
+			sumSequaredPLOF += squaredPLOF[i];
 		double mean = sumSequaredPLOF / n;
-		double nPLOF = lambda * Math.sqrt(mean) * sqrt2;
-
-		double[] LoOp = new double[n];
-		for (int i = 0; i < n; i++) {
-			LoOp[i] = Math.max(0, this.erf(PLOF[i] / nPLOF));
-		}
+		final double nPLOF = lambda * Math.sqrt(mean) * sqrt2;
+
+		final double[] LoOp = new double[n];
+		new ParallelLoop() {
+			@Override
+			protected void run(int first, int last, int block) {
+				for (int i = first; i < last; i++) {
+					LoOp[i] = Math.max(0, erf(PLOF[i] / nPLOF));
+				}
+			}
+		}.execute(n, threads);
 		return LoOp;
 
 	}
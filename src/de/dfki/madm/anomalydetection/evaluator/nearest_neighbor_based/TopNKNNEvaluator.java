@@ -0,0 +1,243 @@
+/*
+ *  RapidMiner Anomaly Detection Extension
+ *
+ *  Copyright (C) 2009-2014 by Deutsches Forschungszentrum fuer
+ *  Kuenstliche Intelligenz GmbH or its licensors, as applicable.
+ *
+ *  This is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Affero General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  You should have received a copy of the GNU Affero General Public License
+ *  along with this software. If not, see <http://www.gnu.org/licenses/.
+ *
+ * Responsible: Markus Goldstein (Markus.Goldstein@dfki.de)
+ *
+ * URL: http://madm.dfki.de/rapidminer/anomalydetection
+ */
+package de.dfki.madm.anomalydetection.evaluator.nearest_neighbor_based;
+
+import java.util.Random;
+
+import com.rapidminer.operator.Operator;
+import com.rapidminer.tools.math.similarity.DistanceMeasure;
+
+import de.dfki.madm.anomalydetection.evaluator.Evaluator;
+
+/**
+ * This class computes the top-n outliers according to the k-NN anomaly score
+ * using the randomized nested loop with pruning proposed by Bay and Schwabacher
+ * (ORCA, 2003). The points are processed in random order and the nearest
+ * neighbors of a candidate are searched in random order as well. The score of
+ * the partial neighborhood is an upper bound of the final score, so a
+ * candidate is abandoned as soon as it drops below the score of the n-th best
+ * outlier found so far.
+ *
+ * Only the top-n points get their exact score. Abandoned points get the score
+ * of the partial neighborhood at the time they were abandoned, which is below
+ * the score of all top-n points.
+ *
+ */
+public class TopNKNNEvaluator implements Evaluator {
+
+	/** The points with distinct spatial coordinates **/
+	private double[][] points;
+
+	/** The number of elements having the coordinates of each point **/
+	private int[] weight;
+
+	private int n, k;
+
+	private boolean kth;
+
+	private DistanceMeasure measure;
+
+	/** The number of outliers to be found **/
+	private int numberOfOutliers;
+
+	private Random random;
+
+	private Operator logger;
+
+	/** The number of candidates abandoned before the full scan **/
+	private int pruned;
+
+	/**
+	 * The indices of the points which can be neighbors. Null if all points can
+	 * be neighbors.
+	 **/
+	private int[] reference;
+
+	public TopNKNNEvaluator(double[][] points, int[] weight, int k,
+			boolean kth, DistanceMeasure measure, int numberOfOutliers,
+			Random random, Operator logger) {
+		this.points = points;
+		this.weight = weight;
+		this.n = points.length;
+		this.k = k;
+		this.kth = kth;
+		this.measure = measure;
+		this.numberOfOutliers = Math.min(numberOfOutliers, n);
+		this.random = random;
+		this.logger = logger;
+	}
+
+	public void setReference(int[] reference) {
+		this.reference = reference;
+	}
+
+	public int getNumberOfPrunedPoints() {
+		return pruned;
+	}
+
+	@Override
+	public double[] evaluate() {
+		long start = System.currentTimeMillis();
+		double[] res = new double[n];
+
+		int[] order = shuffle(createOrder(n));
+		int[] neighborOrder = reference == null ? order : shuffle(reference
+				.clone());
+
+		// min heap containing the top-n scores found so far
+		double[] heapScore = new double[numberOfOutliers];
+		int heapSize = 0;
+		double cutoff = Double.NEGATIVE_INFINITY;
+
+		// the nearest neighbors found so far sorted ascending by distance
+		double[] neighborDistances = new double[k];
+		int[] neighborIndicies = new int[k];
+
+		pruned = 0;
+		for (int candidate : order) {
+			int numberOfNeighbors = 0;
+			double score = Double.POSITIVE_INFINITY;
+			boolean abandoned = false;
+
+			for (int current : neighborOrder) {
+				if (current == candidate)
+					continue;
+				double distance = measure.calculateDistance(points[candidate],
+						points[current]);
+				if (numberOfNeighbors == k
+						&& neighborDistances[k - 1] <= distance)
+					continue;
+
+				// insertion sort into the neighborhood set
+				int i = numberOfNeighbors < k ? numberOfNeighbors++ : k - 1;
+				for (; i > 0 && neighborDistances[i - 1] > distance; i--) {
+					neighborDistances[i] = neighborDistances[i - 1];
+					neighborIndicies[i] = neighborIndicies[i - 1];
+				}
+				neighborDistances[i] = distance;
+				neighborIndicies[i] = current;
+
+				score = score(candidate, neighborDistances, neighborIndicies,
+						numberOfNeighbors);
+				if (score < cutoff) {
+					abandoned = true;
+					break;
+				}
+			}
+
+			if (numberOfNeighbors == 0)
+				score = 0;
+			res[candidate] = score;
+			if (abandoned) {
+				pruned++;
+				continue;
+			}
+
+			// update the top-n outliers and the cutoff
+			if (heapSize < numberOfOutliers) {
+				heapScore[heapSize] = score;
+				siftUp(heapScore, heapSize++);
+				if (heapSize == numberOfOutliers)
+					cutoff = heapScore[0];
+			} else if (score > heapScore[0]) {
+				heapScore[0] = score;
+				siftDown(heapScore, heapSize);
+				cutoff = heapScore[0];
+			}
+		}
+
+		if (logger != null) {
+			logger.logNote("Pruned " + pruned + " of " + n + " points");
+			logger.logNote("Time " + (System.currentTimeMillis() - start));
+		}
+		return res;
+	}
+
+	/**
+	 * Calculates the score of the neighborhood found so far in the same manner
+	 * as {@link KNNEvaluator}. Returns positive infinity as long as there are
+	 * less than k elements in the neighborhood, because the score can not be
+	 * bounded yet.
+	 */
+	private double score(int candidate, double[] neighborDistances,
+			int[] neighborIndicies, int numberOfNeighbors) {
+		double sum = 0;
+		int elementsSoFar = weight[candidate] - 1;
+		int j = 0;
+		for (; j < numberOfNeighbors && elementsSoFar < k; j++) {
+			int noOfElements = Math.min(weight[neighborIndicies[j]], k
+					- elementsSoFar);
+			sum += noOfElements * neighborDistances[j];
+			elementsSoFar += noOfElements;
+		}
+		if (elementsSoFar < k)
+			return Double.POSITIVE_INFINITY;
+		if (kth)
+			return j == 0 ? 0 : neighborDistances[j - 1];
+		return sum / elementsSoFar;
+	}
+
+	private static int[] createOrder(int n) {
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+		return order;
+	}
+
+	private int[] shuffle(int[] order) {
+		for (int i = order.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int temp = order[i];
+			order[i] = order[j];
+			order[j] = temp;
+		}
+		return order;
+	}
+
+	private static void siftUp(double[] heap, int i) {
+		while (i > 0) {
+			int parent = (i - 1) >> 1;
+			if (heap[parent] <= heap[i])
+				break;
+			double temp = heap[parent];
+			heap[parent] = heap[i];
+			heap[i] = temp;
+			i = parent;
+		}
+	}
+
+	private static void siftDown(double[] heap, int size) {
+		int i = 0;
+		while (true) {
+			int smallest = i;
+			int left = 2 * i + 1;
+			int right = left + 1;
+			if (left < size && heap[left] < heap[smallest])
+				smallest = left;
+			if (right < size && heap[right] < heap[smallest])
+				smallest = right;
+			if (smallest == i)
+				break;
+			double temp = heap[smallest];
+			heap[smallest] = heap[i];
+			heap[i] = temp;
+			i = smallest;
+		}
+	}
+}
@@ -31,6 +31,8 @@ import com.rapidminer.example.table.AttributeFactory;
 import com.rapidminer.tools.Ontology;
 import com.rapidminer.operator.Operator;
 
+import de.dfki.madm.anomalydetection.evaluator.ExampleSetReader;
+
 /**
  * The class that has the actual implementation of the HBOS.
  * 
@@ -102,25 +104,20 @@ public class HistogramEvaluator {
 		}
 		
 		// read data from example set, save maximum value for every row (needed to normalize bin width)
-		double[][] data = new double[items][number_of_features];
-		int line = 0;
+		Attribute[] feature_attributes = new Attribute[number_of_features];
 		int row = 0;
+		for (String att : bin_info_help.keySet()) {
+			feature_attributes[row++] = attributes.get(att);
+		}
+		double[][] data = ExampleSetReader.readPoints(exampleSet, feature_attributes, 1);
 		
 		double[] maximum_value = new double[number_of_features];
-		for (Example example : exampleSet) {
-			row = 0;
-			for (String att : bin_info_help.keySet()) { 
-				Attribute a = attributes.get(att);
-				data[line][row] = example.getValue(a);
-				if(line == 0) {
-					maximum_value[row] = example.getValue(a);
-				}
-				if(example.getValue(a)>maximum_value[row]){
-					maximum_value[row] = example.getValue(a);
+		for (int line = 0; line < items; line++) {
+			for (row = 0; row < number_of_features; row++) {
+				if(line == 0 || data[line][row]>maximum_value[row]){
+					maximum_value[row] = data[line][row];
 				}
-				row++;
 			}
-			line++;
 		}
 		// sort data
 		data = sort_2dim_array(data, items, number_of_features);
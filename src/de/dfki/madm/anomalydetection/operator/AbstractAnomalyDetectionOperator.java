@@ -21,6 +21,8 @@ package de.dfki.madm.anomalydetection.operator;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import com.rapidminer.example.Attribute;
 import com.rapidminer.example.Attributes;
@@ -29,8 +31,8 @@ import com.rapidminer.example.ExampleSet;
 import com.rapidminer.example.table.AttributeFactory;
 import com.rapidminer.example.table.DataRowFactory;
 import com.rapidminer.example.table.DataRowReader;
+import com.rapidminer.example.table.DoubleArrayDataRow;
 import com.rapidminer.example.table.MemoryExampleTable;
-import com.rapidminer.example.table.NominalMapping;
 
 import com.rapidminer.operator.Operator;
 import com.rapidminer.operator.OperatorDescription;
@@ -43,9 +45,15 @@ import com.rapidminer.operator.ports.metadata.ExampleSetMetaData;
 import com.rapidminer.operator.ports.metadata.MetaData;
 import com.rapidminer.operator.ports.metadata.PassThroughRule;
 import com.rapidminer.operator.preprocessing.MaterializeDataInMemory;
+import com.rapidminer.parameter.ParameterType;
+import com.rapidminer.parameter.ParameterTypeBoolean;
+import com.rapidminer.parameter.Parameters;
 
 import com.rapidminer.tools.Ontology;
 
+import de.dfki.madm.anomalydetection.evaluator.DoubleIntHashMap;
+import de.dfki.madm.anomalydetection.evaluator.ExampleSetReader;
+
 /**
  * The Abstract Anomaly Detection Operator that defines the basic input ports,
  * output ports and does the common preprocessing. 
@@ -55,6 +63,15 @@ import com.rapidminer.tools.Ontology;
  */
 public abstract class AbstractAnomalyDetectionOperator extends Operator {
 
+	/** The parameter name for &quot;Adds the anomaly score to the table of the input example set instead of copying all data&quot; **/
+	public static final String PARAMETER_CREATE_VIEW = "create view (no copy)";
+
+	/** The parameter name of sub classes with a parallel evaluation for &quot;Specifies that evaluation process should be performed in parallel&quot; **/
+	public static final String PARAMETER_PARALLELIZE_EVALUATION_PROCESS = "parallelize evaluation process";
+
+	/** The parameter name of sub classes with a parallel evaluation for &quot;The number of threads for the computation&quot; **/
+	public static final String PARAMETER_NUMBER_OF_THREADS = "number of threads";
+
 	/**
 	 * input port
 	 */
@@ -73,14 +90,21 @@ public abstract class AbstractAnomalyDetectionOperator extends Operator {
 	private OutputPort originalOutput= getOutputPorts().createPort("original set");
 
 	/**
-	 * List of exampleSet Id
+	 * Output port for the scores only. If it is connected and the example set
+	 * output is not, the scores are not stored in the example set.
 	 */
-	private ArrayList<Object> ids;
+	private OutputPort scoresOutput = getOutputPorts().createPort("scores");
+
 	/**
-	 * HashMap containing the mapping of the example Ids to the index of the
-	 * example which will be used in the further processing
+	 * The id of each example, nominal ids are represented by their index in
+	 * the mapping. Null if the example set has no id attribute.
 	 */
-	private HashMap<Object, Integer> idMap;
+	private double[] idValues;
+	/**
+	 * The mapping of the example Ids to the index of the example which will be
+	 * used in the further processing
+	 */
+	private DoubleIntHashMap idMap;
 
 	public AbstractAnomalyDetectionOperator(OperatorDescription description) {
 		super(description);
@@ -103,6 +127,32 @@ public abstract class AbstractAnomalyDetectionOperator extends Operator {
 					}
 				});
 		getTransformer().addPassThroughRule(exampleSetInput, originalOutput);
+		getTransformer().addRule(
+				new PassThroughRule(exampleSetInput, scoresOutput, false) {
+					@Override
+					public MetaData modifyMetaData(MetaData metaData) {
+						if (metaData instanceof ExampleSetMetaData) {
+							ExampleSetMetaData inputMetaData = (ExampleSetMetaData) metaData;
+							ExampleSetMetaData scoresMetaData = new ExampleSetMetaData();
+							AttributeMetaData id = inputMetaData
+									.getSpecial(Attributes.ID_NAME);
+							if (id != null)
+								scoresMetaData.addAttribute(id.copy());
+							else
+								scoresMetaData.addAttribute(new AttributeMetaData(
+										Attributes.ID_NAME, Ontology.INTEGER,
+										Attributes.ID_NAME));
+							scoresMetaData.addAttribute(new AttributeMetaData(
+									Attributes.OUTLIER_NAME, Ontology.REAL,
+									Attributes.OUTLIER_NAME));
+							scoresMetaData.setNumberOfExamples(inputMetaData
+									.getNumberOfExamples());
+							return scoresMetaData;
+						} else {
+							return metaData;
+						}
+					}
+				});
 
 	}
 
@@ -116,6 +166,40 @@ public abstract class AbstractAnomalyDetectionOperator extends Operator {
 	public void doWork() throws OperatorException {
 		ExampleSet exampleSet = exampleSetInput.getData(ExampleSet.class);
 
+		boolean scoresOnly = isScoresOnly();
+		ExampleSet resultSet = scoresOnly ? exampleSet
+				: createResultSet(exampleSet);
+		Attributes attributes = resultSet.getAttributes();
+
+		Attribute anomalyScore = null;
+		if (!scoresOnly)
+			anomalyScore = initializeAnomalyScore(resultSet, attributes);
+		double[][] points = initializePoints(resultSet, attributes);
+		double[] res = doWork(resultSet, attributes, points);
+		if (!scoresOnly) {
+			storeResult(resultSet, res, anomalyScore);
+			exampleSetOutput.deliver(resultSet);
+		}
+		deliverScores(exampleSet, res);
+		originalOutput.deliver(exampleSet);
+
+	}
+
+	/**
+	 * Creates the example set the anomaly score is added to. By default the
+	 * data is copied into a new memory table, so that the input table is not
+	 * changed. If a view is requested, the example set is only cloned and the
+	 * score column is added to the table of the input example set.
+	 * 
+	 * @param exampleSet
+	 *            the input example set
+	 * @return the example set for the result
+	 * @throws OperatorException
+	 */
+	public ExampleSet createResultSet(ExampleSet exampleSet)
+			throws OperatorException {
+		if (getParameterAsBoolean(PARAMETER_CREATE_VIEW))
+			return (ExampleSet) exampleSet.clone();
 		int type = DataRowFactory.TYPE_DOUBLE_ARRAY;
 		if (exampleSet.getExampleTable() instanceof MemoryExampleTable) {
 			DataRowReader reader = exampleSet.getExampleTable()
@@ -123,21 +207,96 @@ public abstract class AbstractAnomalyDetectionOperator extends Operator {
 			if (reader.hasNext())
 				type = reader.next().getType();
 		}
-		ExampleSet resultSet = null;
 		if (type >= 0)
-			resultSet = MaterializeDataInMemory.materializeExampleSet(
-					exampleSet, type);
-		else
-			resultSet = (ExampleSet) exampleSet.clone();
-		Attributes attributes = resultSet.getAttributes();
+			return MaterializeDataInMemory.materializeExampleSet(exampleSet,
+					type);
+		return (ExampleSet) exampleSet.clone();
+	}
 
-		Attribute anomalyScore = initializeAnomalyScore(resultSet, attributes);
-		double[][] points = initializePoints(resultSet, attributes);
-		double[] res = doWork(resultSet, attributes, points);
-		storeResult(resultSet, res, anomalyScore);
-		originalOutput.deliver(exampleSet);
-		exampleSetOutput.deliver(resultSet);
+	/**
+	 * Returns true if only the scores output is connected. In this case the
+	 * input example set is neither copied nor changed.
+	 */
+	public boolean isScoresOnly() {
+		return scoresOutput.isConnected() && !exampleSetOutput.isConnected();
+	}
+
+	/**
+	 * Returns the anomaly score of each example in the order of the example
+	 * set for the result of {@link #doWork(ExampleSet, Attributes, double[][])}.
+	 */
+	protected double[] getExampleScores(double[] res) {
+		return res;
+	}
+
+	/**
+	 * Delivers an example set containing only the id and the anomaly score of
+	 * each example to the scores output if it is connected. If the input has
+	 * no id attribute, the examples are numbered starting with 1.
+	 * 
+	 * @param exampleSet
+	 *            the input example set
+	 * @param res
+	 *            the result of the evaluation
+	 * @throws OperatorException
+	 */
+	public void deliverScores(ExampleSet exampleSet, double[] res)
+			throws OperatorException {
+		if (!scoresOutput.isConnected())
+			return;
+		double[] scores = getExampleScores(res);
+		int n = exampleSet.size();
+		Attribute inputId = exampleSet.getAttributes().getId();
+		Attribute id;
+		double[][] idValues = null;
+		if (inputId != null) {
+			id = AttributeFactory.createAttribute(inputId);
+			idValues = ExampleSetReader.readPoints(exampleSet,
+					new Attribute[] { inputId }, getPreprocessingThreads());
+		} else
+			id = AttributeFactory.createAttribute(Attributes.ID_NAME,
+					Ontology.INTEGER);
+		Attribute score = AttributeFactory.createAttribute(
+				Attributes.OUTLIER_NAME, Ontology.REAL);
+		List<Attribute> attributes = new ArrayList<Attribute>();
+		attributes.add(id);
+		attributes.add(score);
+		MemoryExampleTable table = new MemoryExampleTable(attributes);
+		for (int i = 0; i < n; i++) {
+			double[] row = { idValues == null ? i + 1 : idValues[i][0],
+					scores[i] };
+			table.addDataRow(new DoubleArrayDataRow(row));
+		}
+		Map<Attribute, String> specialAttributes = new HashMap<Attribute, String>();
+		specialAttributes.put(id, Attributes.ID_NAME);
+		specialAttributes.put(score, Attributes.OUTLIER_NAME);
+		scoresOutput.deliver(table.createExampleSet(specialAttributes));
+	}
 
+	public OutputPort getScoresOutput() {
+		return scoresOutput;
+	}
+
+	/**
+	 * Returns the index of the parameter type with the given key or -1 if the
+	 * list does not contain it.
+	 */
+	protected static int indexOfParameterType(List<ParameterType> types,
+			String key) {
+		for (int i = 0; i < types.size(); i++)
+			if (types.get(i).getKey().equals(key))
+				return i;
+		return -1;
+	}
+
+	@Override
+	public List<ParameterType> getParameterTypes() {
+		List<ParameterType> types = super.getParameterTypes();
+		types.add(new ParameterTypeBoolean(
+				PARAMETER_CREATE_VIEW,
+				"Adds the anomaly score to the table of the input example set instead of copying all data into a new table. This halves the memory consumption for large data sets.",
+				false, true));
+		return types;
 	}
 
 	/**
@@ -167,12 +326,12 @@ public abstract class AbstractAnomalyDetectionOperator extends Operator {
 		return exampleSetOutput;
 	}
 
-	public HashMap<Object, Integer> getIdMap() {
+	public DoubleIntHashMap getIdMap() {
 		return idMap;
 	}
 
-	public ArrayList<Object> getIds() {
-		return ids;
+	public double[] getIdValues() {
+		return idValues;
 	}
 
 	public OutputPort getOriginalOutput() {
@@ -205,36 +364,40 @@ public abstract class AbstractAnomalyDetectionOperator extends Operator {
 	 * @return points the initialized points from the exampleSet
 	 */
 	public double[][] initializePoints(ExampleSet exampleSet,
-			Attributes attributes) {
-		double[][] points = new double[exampleSet.size()][attributes.size()];
-		int currentExample = 0;
-		Attribute idAttribute= exampleSet.getAttributes().getId();
-		
-		ids = new ArrayList<Object>();
-		idMap = new HashMap<Object, Integer>();
-		for (Example example : exampleSet) {
-			int i = 0;
-			Object id;
-			if(idAttribute!=null){
-			if(idAttribute.isNominal()){
-				NominalMapping nominalMapping = idAttribute.getMapping();
-				id = nominalMapping.mapIndex((int)(example.getValue(idAttribute)));
-				
-			}
-			else {
-				id = example.getValue(idAttribute);
-			}
-			ids.add(id);
-			idMap.put(id, currentExample);
-			}
-			for (Attribute currentAttribute : attributes) {
-
-				points[currentExample][i++] = example
-						.getValue(currentAttribute);
-			}
-			currentExample++;
+			Attributes attributes) throws OperatorException {
+		if (needsIdMap()) {
+			Attribute idAttribute = exampleSet.getAttributes().getId();
+			idValues = idAttribute == null ? null : ExampleSetReader
+					.readValues(exampleSet, idAttribute,
+							getPreprocessingThreads());
+			idMap = new DoubleIntHashMap(idValues == null ? new double[0]
+					: idValues);
 		}
-		return points;
+		return ExampleSetReader.readPoints(exampleSet,
+				ExampleSetReader.toArray(attributes), getPreprocessingThreads());
+	}
+
+	/**
+	 * Returns true if the operator uses the ids of the examples, which are
+	 * then read by {@link #initializePoints(ExampleSet, Attributes)} into
+	 * {@link #getIdValues()} and {@link #getIdMap()}.
+	 */
+	protected boolean needsIdMap() {
+		return false;
+	}
+
+	/**
+	 * Returns the number of threads used for reading the example set and for
+	 * other preprocessing. If the operator defines the parameters for a
+	 * parallel evaluation, these are used, otherwise 1.
+	 */
+	protected int getPreprocessingThreads() throws OperatorException {
+		Parameters parameters = getParameters();
+		if (parameters.getParameterType(PARAMETER_PARALLELIZE_EVALUATION_PROCESS) != null
+				&& parameters.getParameterType(PARAMETER_NUMBER_OF_THREADS) != null
+				&& getParameterAsBoolean(PARAMETER_PARALLELIZE_EVALUATION_PROCESS))
+			return getParameterAsInt(PARAMETER_NUMBER_OF_THREADS);
+		return 1;
 	}
 
 	public void storeResult(ExampleSet exampleSet, double[] res,
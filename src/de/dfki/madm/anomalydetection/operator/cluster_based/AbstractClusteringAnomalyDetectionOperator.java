@@ -21,15 +21,11 @@ package de.dfki.madm.anomalydetection.operator.cluster_based;
 
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 
 import com.rapidminer.example.Attribute;
 import com.rapidminer.example.Attributes;
 import com.rapidminer.example.ExampleSet;
-import com.rapidminer.example.table.DataRowFactory;
-import com.rapidminer.example.table.DataRowReader;
-import com.rapidminer.example.table.MemoryExampleTable;
 import com.rapidminer.operator.OperatorDescription;
 import com.rapidminer.operator.OperatorException;
 import com.rapidminer.operator.clustering.Centroid;
@@ -39,27 +35,61 @@ import com.rapidminer.operator.clustering.ClusterModel;
 import com.rapidminer.operator.ports.InputPort;
 import com.rapidminer.operator.ports.OutputPort;
 import com.rapidminer.operator.ports.metadata.DistanceMeasurePrecondition;
-import com.rapidminer.operator.preprocessing.MaterializeDataInMemory;
+import com.rapidminer.operator.ports.metadata.MetaData;
+import com.rapidminer.operator.ports.metadata.SimplePrecondition;
 import com.rapidminer.parameter.ParameterType;
-
+import com.rapidminer.parameter.ParameterTypeBoolean;
+import com.rapidminer.parameter.ParameterTypeInt;
+import com.rapidminer.parameter.conditions.BooleanParameterCondition;
+import com.rapidminer.tools.RandomGenerator;
 import com.rapidminer.tools.math.similarity.DistanceMeasureHelper;
 import com.rapidminer.tools.math.similarity.DistanceMeasures;
 
+import de.dfki.madm.anomalydetection.evaluator.DoubleIntHashMap;
+import de.dfki.madm.anomalydetection.evaluator.cluster_based.MiniBatchKMeans;
 import de.dfki.madm.anomalydetection.operator.AbstractAnomalyDetectionOperator;
 
 /**
  * The Abstract clustering based anomaly detection operator defines basic
  * features and behavior for clustered based outlier detection operators.
  * 
+ * If no cluster model is connected, the examples are clustered by a built-in
+ * mini-batch k-means with k-means++ seeding, which works on the attribute
+ * values directly and needs no ids. It always uses the squared euclidean
+ * distance, whatever measure is selected for the scoring.
+ * 
  * @author Mennatallah Amer
  * 
  */
 
 public abstract class AbstractClusteringAnomalyDetectionOperator extends
 		AbstractAnomalyDetectionOperator {
-	/** The cluster model input port. **/
+
+	/** The parameter name for &quot;The number of clusters of the built-in k-means&quot; **/
+	public static final String PARAMETER_NUMBER_OF_CLUSTERS = "number of clusters (k)";
+
+	/** The parameter name for &quot;The number of examples in each mini-batch of the built-in k-means&quot; **/
+	public static final String PARAMETER_BATCH_SIZE = "mini-batch size";
+
+	/** The parameter name for &quot;The number of mini-batches of the built-in k-means&quot; **/
+	public static final String PARAMETER_BATCH_ITERATIONS = "mini-batch iterations";
+
+	/**
+	 * Boolean for parallelization
+	 */
+	public static final String PARAMETER_PARALLELIZE_EVALUATION_PROCESS = "parallelize evaluation process";
+	public static final String PARAMETER_PARALLELIZE_EVALUATION_PROCESS_DESCRIPTION = "Specifies that evaluation process should be performed in parallel";
+
+	/**
+	 * The parameter name for &quot;Specifies the number of threads for
+	 * execution.&quot;
+	 **/
+	public static final String PARAMETER_NUMBER_OF_THREADS = "number of threads";
+	public static final String PARAMETER_NUMBER_OF_THREADS_DESCRIPTION = "The number of threads for the computation";
+
+	/** The cluster model input port, the examples are clustered by k-means if it is not connected. **/
 	private InputPort clusterModelInput = getInputPorts().createPort(
-			"cluster Model", ClusterModel.class);
+			"cluster Model");
 	
 	private OutputPort clusterModelOutput= getOutputPorts().createPort("cluster model");
 	
@@ -78,6 +108,8 @@ public abstract class AbstractClusteringAnomalyDetectionOperator extends
 	public AbstractClusteringAnomalyDetectionOperator(
 			OperatorDescription description) {
 		super(description);
+		clusterModelInput.addPrecondition(new SimplePrecondition(
+				clusterModelInput, new MetaData(ClusterModel.class), false));
 		getExampleSetInput().addPrecondition(
 				new DistanceMeasurePrecondition(getExampleSetInput(), this));
 		InputPort exampleSetInput= getInputPorts().getPortByName("example set");
@@ -92,6 +124,8 @@ public abstract class AbstractClusteringAnomalyDetectionOperator extends
 		getOutputPorts().removePort(exampleSetOutputPort);
 		getOutputPorts().addPort(exampleSetOutputPort);
 		getOutputPorts().addPort(originalOutPut);
+		getOutputPorts().removePort(getScoresOutput());
+		getOutputPorts().addPort(getScoresOutput());
 		getTransformer().addPassThroughRule(clusterModelInput, clusterModelOutput);
 		
 		
@@ -120,29 +154,25 @@ public abstract class AbstractClusteringAnomalyDetectionOperator extends
 	public void doWork() throws OperatorException {
 		ExampleSet exampleSet = getExampleSetInput().getData(ExampleSet.class);
 
-		int type = DataRowFactory.TYPE_DOUBLE_ARRAY;
-		if (exampleSet.getExampleTable() instanceof MemoryExampleTable) {
-			DataRowReader reader = exampleSet.getExampleTable()
-					.getDataRowReader();
-			if (reader.hasNext())
-				type = reader.next().getType();
-		}
-		ExampleSet resultSet = null;
-		if (type >= 0)
-			resultSet = MaterializeDataInMemory.materializeExampleSet(
-					exampleSet, type);
-		else
-			resultSet = (ExampleSet) exampleSet.clone();
+		boolean scoresOnly = isScoresOnly();
+		ExampleSet resultSet = scoresOnly ? exampleSet
+				: createResultSet(exampleSet);
 		Attributes attributes = resultSet.getAttributes();
 
-		Attribute anomalyScore = initializeAnomalyScore(resultSet, attributes);
+		Attribute anomalyScore = null;
+		if (!scoresOnly)
+			anomalyScore = initializeAnomalyScore(resultSet, attributes);
 		double[][] points = initializePoints(resultSet, attributes);
 		preprocessing(exampleSet, attributes, points);
 		double[] res = doWork(resultSet, attributes, points);
-		storeResult(resultSet, res, anomalyScore);
+		if (!scoresOnly) {
+			storeResult(resultSet, res, anomalyScore);
+			getExampleSetOutput().deliver(resultSet);
+		}
+		deliverScores(exampleSet, res);
 		getOriginalOutput().deliver(exampleSet);
-		getExampleSetOutput().deliver(resultSet);
-		clusterModelOutput.deliver(clusterModelInput.getData(ClusterModel.class));
+		if (clusterModelInput.isConnected())
+			clusterModelOutput.deliver(clusterModelInput.getData(ClusterModel.class));
 		
 		
 	}
@@ -159,6 +189,12 @@ public abstract class AbstractClusteringAnomalyDetectionOperator extends
 	 */
 	public void preprocessing(ExampleSet exampleSet, Attributes attributes,
 			double[][] points) throws OperatorException {
+		if (!needsClustering())
+			return;
+		if (!clusterModelInput.isConnected()) {
+			cluster(points);
+			return;
+		}
 		
 		ClusterModel model = clusterModelInput.getData(ClusterModel.class);
 		Object[] clusters = model.getClusters().toArray();
@@ -172,17 +208,19 @@ public abstract class AbstractClusteringAnomalyDetectionOperator extends
 		Arrays.fill(belongsToCluster, -1);
 		centriods = new double[numberOfClusters][attributeSize];
 		
-		HashMap<Object, Integer> idMap = getIdMap();
+		DoubleIntHashMap idMap = getIdMap();
+		double[] idValues = getIdValues();
+		Attribute idAttribute = attributes.getId();
 		for (int i = 0; i < numberOfClusters ; i++) {
 			clusterSize[i] = ((Cluster) clusters[i]).getNumberOfExamples();
 			Collection<Object> exampleIds = ((Cluster) clusters[i])
 					.getExampleIds();
 			for (Object id : exampleIds) {
-				if(!idMap.containsKey(id)){
+				int mapping = indexOfId(id, idAttribute, idMap);
+				if(mapping < 0){
 					// Id present in the cluster model and not in the clustered set 
 					throw new OperatorException("Incompatible Ids between the cluster model and clustered set.");
 				}
-				int mapping = idMap.get(id);
 				belongsToCluster[mapping] = i;
 				for (int j = 0; j < attributeSize; j++)
 					centriods[i][j] += points[mapping][j];
@@ -201,9 +239,8 @@ public abstract class AbstractClusteringAnomalyDetectionOperator extends
 		}
 		for (int i=0; i< n ; i++){
 			if(belongsToCluster[i]==-1){
-				double id=exampleSet.getExample(i).getId();
-				if(idMap.containsKey(id)){
-					int idMapped = idMap.get(id);
+				int idMapped = idValues == null ? -1 : idMap.get(idValues[i]);
+				if(idMapped >= 0){
 					for (int l=0; l< points[i].length; l++)
 					{
 						if(points[i][l]!= points[idMapped][l])
@@ -218,11 +255,81 @@ public abstract class AbstractClusteringAnomalyDetectionOperator extends
 		
 
 	}
+	/**
+	 * Returns the index of the example having the id of the cluster model or
+	 * -1 if there is none. Nominal ids are looked up by their index in the
+	 * mapping of the id attribute.
+	 */
+	private static int indexOfId(Object id, Attribute idAttribute,
+			DoubleIntHashMap idMap) {
+		if (id instanceof Number)
+			return idMap.get(((Number) id).doubleValue());
+		if (idAttribute != null && idAttribute.isNominal()) {
+			int index = idAttribute.getMapping().getIndex(id.toString());
+			return index < 0 ? -1 : idMap.get(index);
+		}
+		return -1;
+	}
+
+	/**
+	 * Clusters the points by the built-in mini-batch k-means.
+	 */
+	private void cluster(double[][] points) throws OperatorException {
+		MiniBatchKMeans kMeans = new MiniBatchKMeans(points,
+				getParameterAsInt(PARAMETER_NUMBER_OF_CLUSTERS),
+				getParameterAsInt(PARAMETER_BATCH_SIZE),
+				getParameterAsInt(PARAMETER_BATCH_ITERATIONS),
+				RandomGenerator.getRandomGenerator(this),
+				getPreprocessingThreads());
+		kMeans.cluster();
+		centriods = kMeans.getCentroids();
+		belongsToCluster = kMeans.getBelongsToCluster();
+		clusterSize = kMeans.getClusterSize();
+		this.logNote("cluster number =" + centriods.length);
+	}
+
+	/**
+	 * Returns false if the operator scores the examples without clustering
+	 * them, e.g. by a model at its input port. The clusters are not
+	 * initialized then.
+	 */
+	protected boolean needsClustering() throws OperatorException {
+		return true;
+	}
+
+	@Override
+	protected boolean needsIdMap() {
+		return clusterModelInput.isConnected();
+	}
+
 	@Override
 	public List<ParameterType> getParameterTypes() {
 		List<ParameterType> types= super.getParameterTypes();
 		List<ParameterType> distancetypes = DistanceMeasures.getParameterTypes(this);
 		types.addAll(distancetypes);
+		types.add(new ParameterTypeInt(
+				PARAMETER_NUMBER_OF_CLUSTERS,
+				"The number of clusters of the built-in k-means, which is used if no cluster model is connected.",
+				1, Integer.MAX_VALUE, 10, false));
+		types.add(new ParameterTypeInt(
+				PARAMETER_BATCH_SIZE,
+				"The number of examples in each mini-batch of the built-in k-means.",
+				1, Integer.MAX_VALUE, 1000, true));
+		types.add(new ParameterTypeInt(
+				PARAMETER_BATCH_ITERATIONS,
+				"The number of mini-batches of the built-in k-means.",
+				1, Integer.MAX_VALUE, 100, true));
+		types.add(new ParameterTypeBoolean(
+				PARAMETER_PARALLELIZE_EVALUATION_PROCESS,
+				PARAMETER_PARALLELIZE_EVALUATION_PROCESS_DESCRIPTION, false,
+				false));
+		ParameterType type = new ParameterTypeInt(PARAMETER_NUMBER_OF_THREADS,
+				PARAMETER_NUMBER_OF_THREADS_DESCRIPTION, 1, Integer.MAX_VALUE,
+				Runtime.getRuntime().availableProcessors(), false);
+		type.registerDependencyCondition(new BooleanParameterCondition(this,
+				PARAMETER_PARALLELIZE_EVALUATION_PROCESS, true, true));
+		types.add(type);
+		types.addAll(RandomGenerator.getRandomGeneratorParameters(this));
 		return types;
 	}
 	
@@ -25,6 +25,7 @@ import com.rapidminer.example.Attributes;
 import com.rapidminer.example.ExampleSet;
 import com.rapidminer.operator.OperatorDescription;
 import com.rapidminer.operator.OperatorException;
+import com.rapidminer.operator.ports.OutputPort;
 import com.rapidminer.parameter.ParameterType;
 import com.rapidminer.parameter.ParameterTypeBoolean;
 import com.rapidminer.parameter.ParameterTypeDouble;
@@ -32,6 +33,7 @@ import com.rapidminer.parameter.ParameterTypeDouble;
 import com.rapidminer.tools.math.similarity.DistanceMeasure;
 
 import de.dfki.madm.anomalydetection.evaluator.cluster_based.CBLOFEvaluator;
+import de.dfki.madm.anomalydetection.evaluator.cluster_based.CBLOFModel;
 
 /**
  * The CBLOF operator calculates the outlier score based on cluster-based local
@@ -49,6 +51,10 @@ import de.dfki.madm.anomalydetection.evaluator.cluster_based.CBLOFEvaluator;
  * disabled and outliers scores are solely computed based on their distance to
  * the cluster center.
  * 
+ * The model output contains the centroids together with the cluster sizes and
+ * the large clusters. Applying it to another example set scores each example
+ * by its nearest centroid without clustering again.
+ * 
  * 
  * @author Mennatallah Amer
  * 
@@ -68,6 +74,8 @@ public class CBLOFAnomalyDetectionOperator extends
 	 **/
 	public static String PARAMETER_WEIGHTING = "use cluster size as weighting factor";
 
+	private OutputPort modelOutput = getOutputPorts().createPort("model");
+
 	public CBLOFAnomalyDetectionOperator(OperatorDescription description) {
 		super(description);
 
@@ -87,7 +95,11 @@ public class CBLOFAnomalyDetectionOperator extends
 		int[] clusterSize = getClusterSize();
 		CBLOFEvaluator evaluator = new CBLOFEvaluator(alpha, beta, measure, points,
 				belongsToCluster, centroids, clusterSize,weighting);
-		return evaluator.evaluate();
+		evaluator.setNumberOfThreads(getPreprocessingThreads());
+		double[] res = evaluator.evaluate();
+		modelOutput.deliver(new CBLOFModel(exampleSet, measure, centroids,
+				clusterSize, evaluator.getLargeCluster(), weighting));
+		return res;
 
 	}
 
@@ -19,7 +19,6 @@
  */
 package de.dfki.madm.anomalydetection.operator.cluster_based;
 
-import java.util.LinkedList;
 import java.util.List;
 
 import com.rapidminer.example.Attributes;
@@ -35,7 +34,6 @@ import com.rapidminer.parameter.conditions.BooleanParameterCondition;
 import com.rapidminer.parameter.conditions.EqualTypeCondition;
 import com.rapidminer.tools.RandomGenerator;
 import com.rapidminer.tools.math.similarity.DistanceMeasure;
-import com.rapidminer.tools.math.similarity.DistanceMeasures;
 
 import de.dfki.madm.anomalydetection.evaluator.cluster_based.CMGOSEvaluator;
 
@@ -91,13 +89,6 @@ public class CMGOSAnomalyDetectionOperator extends AbstractClusteringAnomalyDete
 	public static final String PARAMETER_RUN = "iterations";
 	public static final String PARAMETER_RUN_DESCRIPTION = "Numer of iterations for computing the MCD. 100-500 might be a good choice.";
 
-	/**
-	 * The parameter name for &quot;Specifies the number of threads for
-	 * execution.&quot; Specifies that evaluation process should be performed in
-	 * parallel &quot;
-	 **/
-	public static final String PARAMETER_NUMBER_OF_THREADS = "number of threads";
-	public static final String PARAMETER_NUMBER_OF_THREADS_DESCRIPTION = "The number of threads for the computation";
 	/**
 	 * The number of times outlier should be removed for minimum covariance
 	 * determinant
@@ -119,11 +110,6 @@ public class CMGOSAnomalyDetectionOperator extends AbstractClusteringAnomalyDete
 	 */
 	public static final String PARAMETER_NUMBER_COVARIANCE_POINTS = "maximum";
 	public static final String PARAMETER_NUMBER_COVARIANCE_POINTS_DESCRIPTION = "Maximum number of instances for covariance matrix calculation";
-	/**
-	 * Boolean for parallelization
-	 */
-	public static final String PARAMETER_PARALLELIZE_EVALUATION_PROCESS = "parallelize evaluation process";
-	public static final String PARAMETER_PARALLELIZE_EVALUATION_PROCESS_DESCRIPTION = "Specifies that evaluation process should be performed in parallel";
 	/**
 	 * Parameter name for gamma &quot; ratio between the maximum size of small
 	 * clusters and the average cluster size &quot. Small clusters are removed.;
@@ -163,7 +149,7 @@ public class CMGOSAnomalyDetectionOperator extends AbstractClusteringAnomalyDete
 
 	@Override
 	public List<ParameterType> getParameterTypes() {
-		List<ParameterType> types = new LinkedList<ParameterType>();
+		List<ParameterType> types = super.getParameterTypes();
 
 		types.add(new ParameterTypeDouble(PARAMETER_OUTLIER_PROBABILITY, PARAMETER_OUTLIER_PROBABILITY_DESCRIPTION, 0, 1.0, 0.975, false));
 		types.add(new ParameterTypeDouble(PARAMETER_GAMMA,"Ratio between the maximum size of small clusters and the average cluster size. Small" +
@@ -206,15 +192,6 @@ public class CMGOSAnomalyDetectionOperator extends AbstractClusteringAnomalyDete
 		type1.registerDependencyCondition(new EqualTypeCondition(getParameterHandler(), PARAMETER_COVARIANCE, COV, false, METHOD_COV_REGULARIZE));
 		types.add(type1);
 
-		List<ParameterType> distancetypes = DistanceMeasures.getParameterTypes(this);
-		types.addAll(distancetypes);
-		
-		types.add(new ParameterTypeBoolean(PARAMETER_PARALLELIZE_EVALUATION_PROCESS, PARAMETER_PARALLELIZE_EVALUATION_PROCESS_DESCRIPTION, false, false));
-		type = (new ParameterTypeInt(PARAMETER_NUMBER_OF_THREADS, PARAMETER_NUMBER_OF_THREADS_DESCRIPTION, 1, Integer.MAX_VALUE, Runtime.getRuntime().availableProcessors(), false));
-		type.registerDependencyCondition(new BooleanParameterCondition(this, PARAMETER_PARALLELIZE_EVALUATION_PROCESS, true, true));
-		types.add(type);
-		
-		types.addAll(RandomGenerator.getRandomGeneratorParameters(this));
 		return types;
 	}
 
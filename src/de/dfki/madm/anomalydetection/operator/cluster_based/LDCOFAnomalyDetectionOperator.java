@@ -25,6 +25,10 @@ import com.rapidminer.example.Attributes;
 import com.rapidminer.example.ExampleSet;
 import com.rapidminer.operator.OperatorDescription;
 import com.rapidminer.operator.OperatorException;
+import com.rapidminer.operator.ports.InputPort;
+import com.rapidminer.operator.ports.OutputPort;
+import com.rapidminer.operator.ports.metadata.MetaData;
+import com.rapidminer.operator.ports.metadata.SimplePrecondition;
 import com.rapidminer.parameter.ParameterType;
 import com.rapidminer.parameter.ParameterTypeBoolean;
 import com.rapidminer.parameter.ParameterTypeDouble;
@@ -32,10 +36,20 @@ import com.rapidminer.parameter.conditions.BooleanParameterCondition;
 import com.rapidminer.tools.math.similarity.DistanceMeasure;
 
 import de.dfki.madm.anomalydetection.evaluator.cluster_based.LDCOFEvaluator;
+import de.dfki.madm.anomalydetection.evaluator.cluster_based.LDCOFModel;
+import de.dfki.madm.anomalydetection.evaluator.cluster_based.OnlineLDCOFEvaluator;
 
 /**
  * The Operator for LDCOF algorithm.
  * 
+ * The model output contains the centroids, the large clusters and their
+ * average distances. Applying it to another example set scores each example
+ * by its nearest centroid without clustering again.
+ * 
+ * If a model is connected to the model input, the examples are added to its
+ * clusters and scored by the updated model instead, e.g. for a stream of
+ * example sets.
+ * 
  * 
  * @author Mennatallah Amer
  * 
@@ -57,32 +71,82 @@ public class LDCOFAnomalyDetectionOperator extends
 	 **/
 	public static String PARAMETER_GAMMA = "gamma";
 
+	/**
+	 * The parameter name for &quot;The factor the weights of the examples
+	 * of the model at the input port are multiplied by&quot;
+	 **/
+	public static String PARAMETER_DECAY = "decay";
+
+	/** The examples are added to a model at the input port instead of clustering them **/
+	private InputPort modelInput = getInputPorts().createPort("model");
+
+	private OutputPort modelOutput = getOutputPorts().createPort("model");
+
 	public LDCOFAnomalyDetectionOperator(OperatorDescription description) {
 		super(description);
+		modelInput.addPrecondition(new SimplePrecondition(modelInput,
+				new MetaData(LDCOFModel.class), false));
+	}
+
+	@Override
+	protected boolean needsClustering() {
+		return !modelInput.isConnected();
+	}
+
+	/**
+	 * Reads only the attributes of the model at the input port if it is
+	 * connected.
+	 */
+	@Override
+	public double[][] initializePoints(ExampleSet exampleSet,
+			Attributes attributes) throws OperatorException {
+		if (modelInput.isConnected())
+			return modelInput.getData(LDCOFModel.class).readPoints(exampleSet,
+					getPreprocessingThreads());
+		return super.initializePoints(exampleSet, attributes);
 	}
 
 	@Override
 	public double[] doWork(ExampleSet exampleSet, Attributes attributes,
 			double[][] points) throws OperatorException {
+		if (modelInput.isConnected()) {
+			// the examples are added to a copy, so the input model is kept
+			LDCOFModel model = modelInput.getData(LDCOFModel.class).copy();
+			this.logNote("Model at input port used, adding the examples to a weight of "
+					+ model.getTotalWeight() + ".");
+			OnlineLDCOFEvaluator evaluator = new OnlineLDCOFEvaluator(model,
+					points, getParameterAsDouble(PARAMETER_DECAY));
+			evaluator.setNumberOfThreads(getPreprocessingThreads());
+			double[] e = evaluator.evaluate();
+			modelOutput.deliver(model);
+			return e;
+		}
+
 		DistanceMeasure measure = getMeasureHelper().getInitializedMeasure(
 				exampleSet);
 
+		boolean likeCBLOF = getParameterAsBoolean(PARAMETER_LIKE_CBLOF);
+		double beta = getParameterAsDouble(PARAMETER_BETA);
+		double alpha = getParameterAsDouble(PARAMETER_ALPHA) / 100;
+		double percentage = getParameterAsDouble(PARAMETER_GAMMA);
 		int[] belongsToCluster = getBelongsToCluster();
 		double[][] centroids = getCentriods();
 		int[] clusterSize = getClusterSize();
 		LDCOFEvaluator evaluator;
-		if (getParameterAsBoolean(PARAMETER_LIKE_CBLOF)) {
-			double beta = getParameterAsDouble(PARAMETER_BETA);
-			double alpha = getParameterAsDouble(PARAMETER_ALPHA) / 100;
+		if (likeCBLOF) {
 			this.logNote(getName() + " alpha " + alpha + " beta" + beta);
 			evaluator = new LDCOFEvaluator(alpha, beta, measure, points,
 					belongsToCluster, centroids, clusterSize);
 		} else {
-			double percentage = getParameterAsDouble(PARAMETER_GAMMA);
 			evaluator = new LDCOFEvaluator(percentage, measure, points,
 					belongsToCluster, centroids, clusterSize);
 		}
+		evaluator.setNumberOfThreads(getPreprocessingThreads());
 		double[] e = evaluator.evaluate();		
+		modelOutput.deliver(new LDCOFModel(exampleSet, measure, centroids,
+				clusterSize, evaluator.getLargeCluster(), evaluator
+						.getAverageDistances(), likeCBLOF, alpha, beta,
+				percentage));
 		return e;
 
 	}
@@ -115,6 +179,10 @@ public class LDCOFAnomalyDetectionOperator extends
 		type.registerDependencyCondition(new BooleanParameterCondition(this,PARAMETER_LIKE_CBLOF, true, false));
 
 		types.add(type);
+		types.add(new ParameterTypeDouble(
+				PARAMETER_DECAY,
+				"The factor the weights of the examples of the model at the input port are multiplied by before adding the examples, 1 keeps all of them.",
+				0, 1, 1));
 /**/
 		return types;
 	}
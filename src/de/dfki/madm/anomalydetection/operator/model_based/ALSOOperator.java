@@ -53,6 +53,8 @@ import com.rapidminer.tools.LogService;
 import com.rapidminer.tools.Ontology;
 import com.rapidminer.tools.math.optimization.ec.es.ESOptimization;
 
+import de.dfki.madm.anomalydetection.operator.AbstractAnomalyDetectionOperator;
+
 /**
  * Operator performing outlier detection by round robin learning.
  * 
@@ -72,6 +74,9 @@ public class ALSOOperator extends OperatorChain {
 	/** The parameter name for &quot; **/
 	public static final String PARAMETER_PARALLELIZE_EVALUATION_PROCESS = "parallelize evaluation process";
 
+	/** The parameter name for &quot;Adds the anomaly scores to the table of the input example set instead of copying all data&quot; **/
+	public static final String PARAMETER_CREATE_VIEW = AbstractAnomalyDetectionOperator.PARAMETER_CREATE_VIEW;
+
 	/**
 	 * input port
 	 */
@@ -235,6 +240,7 @@ public class ALSOOperator extends OperatorChain {
 
 		Tools.onlyNonMissingValues(exampleSet, this.getName());
 		
+		boolean createView = getParameterAsBoolean(PARAMETER_CREATE_VIEW);
 		int type = DataRowFactory.TYPE_DOUBLE_ARRAY;
 		if (exampleSet.getExampleTable() instanceof MemoryExampleTable) {
 			DataRowReader reader = exampleSet.getExampleTable()
@@ -245,7 +251,7 @@ public class ALSOOperator extends OperatorChain {
 
 		// we need a final object for multi-threading
 		ExampleSet _resultSet = null;
-		if (type >= 0)
+		if (type >= 0 && !createView)
 			_resultSet = MaterializeDataInMemory.materializeExampleSet(
 					exampleSet, type);
 		else
@@ -253,7 +259,7 @@ public class ALSOOperator extends OperatorChain {
 		final ExampleSet resultSet = _resultSet;
 
 		ExampleSet individualResultSet = null;
-		if (type >= 0)
+		if (type >= 0 && !createView)
 			individualResultSet = MaterializeDataInMemory.materializeExampleSet(
 					exampleSet, type);
 		else
@@ -564,6 +570,10 @@ public class ALSOOperator extends OperatorChain {
 				PARAMETER_PARALLELIZE_EVALUATION_PROCESS, true, true));
 		types.add(type);
 
+		types.add(new ParameterTypeBoolean(
+				PARAMETER_CREATE_VIEW,
+				"Adds the anomaly scores to the table of the input example set instead of copying all data into two new tables. This reduces the memory consumption for large data sets.",
+				false, true));
 
 		return types;
 
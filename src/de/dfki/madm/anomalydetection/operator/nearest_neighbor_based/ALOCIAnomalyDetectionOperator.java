@@ -19,13 +19,14 @@
  */
 package de.dfki.madm.anomalydetection.operator.nearest_neighbor_based;
 
-import java.util.LinkedList;
 import java.util.List;
 
 import com.rapidminer.example.Attributes;
 import com.rapidminer.example.ExampleSet;
 import com.rapidminer.operator.OperatorDescription;
 import com.rapidminer.operator.OperatorException;
+import com.rapidminer.operator.ports.InputPort;
+import com.rapidminer.operator.ports.OutputPort;
 import com.rapidminer.operator.ports.metadata.DistanceMeasurePrecondition;
 import com.rapidminer.parameter.ParameterType;
 import com.rapidminer.parameter.ParameterTypeBoolean;
@@ -36,6 +37,7 @@ import com.rapidminer.tools.math.similarity.DistanceMeasureHelper;
 import com.rapidminer.tools.math.similarity.DistanceMeasures;
 import com.rapidminer.tools.RandomGenerator;
 import de.dfki.madm.anomalydetection.evaluator.nearest_neighbor_based.ALOCIEvaluator;
+import de.dfki.madm.anomalydetection.evaluator.nearest_neighbor_based.ALOCIModel;
 
 public class ALOCIAnomalyDetectionOperator extends
 		AbstractNearestNeighborBasedAnomalyDetectionOperator {
@@ -46,6 +48,10 @@ public class ALOCIAnomalyDetectionOperator extends
 	public static String PARAMETER_NMIN = "n min";
 	public static String PARAMETER_PARALLELIZE_EVALUATION_PROCESS = "parallelize evaluation process";
 	public static String PARAMETER_NUMBER_OF_THREADS = "number of threads";
+
+	/** The model keeps the box counts, the examples are added to a model at the input port **/
+	public OutputPort modelOutput = getOutputPorts().createPort("model");
+	public InputPort modelInput = getInputPorts().createPort("model");
 	
 	public ALOCIAnomalyDetectionOperator(OperatorDescription description) {
 		super(description);	
@@ -69,13 +75,37 @@ public class ALOCIAnomalyDetectionOperator extends
 		boolean parallelizeProcess = getParameterAsBoolean(PARAMETER_PARALLELIZE_EVALUATION_PROCESS);
 		int numberOfThreads = getParameterAsInt(PARAMETER_NUMBER_OF_THREADS);
 		
+		// the examples are only added to a model if it is delivered, and then
+		// to a copy of the input model, so the input model is kept
+		ALOCIModel model = null;
+		if (modelOutput.isConnected()) {
+			if (modelInput.isConnected()) {
+				ALOCIModel input = modelInput.getData(ALOCIModel.class);
+				if (!input.matches(points[0].length, grids, level, alpha)) {
+					this.logNote("Model at input port can not be used (Model and parameters not matching).");
+				}
+				else {
+					this.logNote("Model at input port used, adding the examples to " + input.getNumberOfPoints() + " points.");
+					model = input.copy();
+				}
+			}
+			if (model == null)
+				model = new ALOCIModel(exampleSet, points[0].length, grids, level, alpha);
+		}
+		else if (modelInput.isConnected()) {
+			this.logNote("Model at input port not used, as the model output is not connected.");
+		}
+
 		ALOCIEvaluator evaluator = new ALOCIEvaluator(measure,points,grids,level,alpha,nmin,RandomGenerator.getRandomGenerator(this), parallelizeProcess, numberOfThreads);
+		evaluator.setModel(model);
 		double[] result = evaluator.evaluate();
+		if (model != null)
+			modelOutput.deliver(model);
 		return result;
 	}
 
 	public List<ParameterType> getParameterTypes() {
-		LinkedList<ParameterType> types = new LinkedList<ParameterType>();
+		List<ParameterType> types = super.getParameterTypes();
 		types.add(new ParameterTypeInt(
 						PARAMETER_LEVEL_DIFFERENCE,
 						"The difference in number of levels between sampling & counting, &alpha = 2 ^ -L",
@@ -21,19 +21,23 @@ package de.dfki.madm.anomalydetection.operator.nearest_neighbor_based;
 
 import com.rapidminer.example.Attribute;
 import com.rapidminer.example.Attributes;
-import com.rapidminer.example.Example;
 import com.rapidminer.example.ExampleSet;
-import com.rapidminer.example.table.DataRowFactory;
-import com.rapidminer.example.table.DataRowReader;
 import com.rapidminer.example.table.MemoryExampleTable;
 import com.rapidminer.operator.OperatorDescription;
 import com.rapidminer.operator.OperatorException;
-import com.rapidminer.operator.preprocessing.MaterializeDataInMemory;
+import com.rapidminer.parameter.ParameterType;
+import com.rapidminer.parameter.ParameterTypeBoolean;
+import com.rapidminer.parameter.ParameterTypeInt;
+import com.rapidminer.parameter.conditions.BooleanParameterCondition;
+import com.rapidminer.tools.RandomGenerator;
 
+import de.dfki.madm.anomalydetection.evaluator.ExampleSetReader;
+import de.dfki.madm.anomalydetection.evaluator.ParallelLoop;
 import de.dfki.madm.anomalydetection.operator.AbstractAnomalyDetectionOperator;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.List;
 
 /**
  * The abstract class for nearest neighbor based operators. It makes additional
@@ -47,17 +51,40 @@ import java.util.LinkedList;
 public abstract class AbstractNearestNeighborBasedAnomalyDetectionOperator
 		extends AbstractAnomalyDetectionOperator {
 
+	/** The parameter name for &quot;Computes the neighborhoods against a random sample of the examples only&quot; **/
+	public static final String PARAMETER_USE_REFERENCE_SAMPLE = "use reference sample";
+
+	/** The parameter name for &quot;The number of examples in the reference sample&quot; **/
+	public static final String PARAMETER_REFERENCE_SAMPLE_SIZE = "reference sample size";
 	
 	/** The points with distinct spatial coordinates**/
 	private double[][] distinctPoints;
 	
-	/** Each entry represents the indices of the points having the same spatial coordinate assigned to that index**/
-	private LinkedList<Integer>[] mapping;
+	/**
+	 * The indices of the points having the same spatial coordinates as the
+	 * distinct point i are stored in mappingIndicies[mappingStart[i] ..
+	 * mappingStart[i+1]-1] in ascending order.
+	 **/
+	private int[] mappingStart;
+
+	private int[] mappingIndicies;
+
+	/** The index of the distinct point of each example **/
+	private int[] distinctIndex;
+
+	/** The number of threads used for preprocessing and storing the result **/
+	private int preprocessingThreads = 1;
 
 
 	/** The number of points assigned to that index **/
 	private int[] weight;
 
+	/**
+	 * The indices of the distinct points in the reference sample in ascending
+	 * order. Null if all points are used as reference.
+	 **/
+	private int[] reference;
+
 	
 
 	public AbstractNearestNeighborBasedAnomalyDetectionOperator(
@@ -69,28 +96,30 @@ public abstract class AbstractNearestNeighborBasedAnomalyDetectionOperator
 	public void doWork() throws OperatorException {
 		ExampleSet exampleSet = getExampleSetInput().getData(ExampleSet.class);
 		this.logNote(getName());
-		int type = DataRowFactory.TYPE_DOUBLE_ARRAY;
-		if (exampleSet.getExampleTable() instanceof MemoryExampleTable) {
-			DataRowReader reader = exampleSet.getExampleTable()
-					.getDataRowReader();
-			if (reader.hasNext())
-				type = reader.next().getType();
-		}
-		ExampleSet resultSet = null;
-		if (type >= 0)
-			resultSet = MaterializeDataInMemory.materializeExampleSet(
-					exampleSet, type);
-		else
-			resultSet = (ExampleSet) exampleSet.clone();
+		boolean scoresOnly = isScoresOnly();
+		ExampleSet resultSet = scoresOnly ? exampleSet
+				: createResultSet(exampleSet);
 		Attributes attributes = resultSet.getAttributes();
 		
-		Attribute anomalyScore = initializeAnomalyScore(resultSet, attributes);
+		Attribute anomalyScore = null;
+		if (!scoresOnly)
+			anomalyScore = initializeAnomalyScore(resultSet, attributes);
+		preprocessingThreads = getPreprocessingThreads();
 		double[][] points = initializePoints(resultSet, attributes);
-		preprocessing(points, exampleSet.size());
+		preprocessing(points, exampleSet.size(), preprocessingThreads);
 		this.logNote("Number of distinct records "+ distinctPoints.length);
-		double[] res = doWork(resultSet, attributes, distinctPoints, weight);
-		storeResult(resultSet, res, anomalyScore);
-		getExampleSetOutput().deliver(resultSet); 
+		int[] pointWeight = weight;
+		reference = null;
+		if (supportsReferenceSampling()
+				&& getParameterAsBoolean(PARAMETER_USE_REFERENCE_SAMPLE))
+			pointWeight = sampleReference(exampleSet.size(),
+					getParameterAsInt(PARAMETER_REFERENCE_SAMPLE_SIZE));
+		double[] res = doWork(resultSet, attributes, distinctPoints, pointWeight);
+		if (!scoresOnly) {
+			storeResult(resultSet, res, anomalyScore);
+			getExampleSetOutput().deliver(resultSet);
+		}
+		deliverScores(exampleSet, res);
 		getOriginalOutput().deliver(exampleSet);
 		
 
@@ -101,75 +130,259 @@ public abstract class AbstractNearestNeighborBasedAnomalyDetectionOperator
 		return null;
 	}
 
-	@Override
-	public double[][] initializePoints(ExampleSet exampleSet,
-			Attributes attributes) {
-		double[][] points = new double[exampleSet.size()][attributes.size()];
-		int currentExample = 0;
-		
-		for (Example example : exampleSet) {
-			int i = 0;
-			for (Attribute currentAttribute : attributes) {
-				points[currentExample][i++] = example
-						.getValue(currentAttribute);
-			}
-			currentExample++;
-		}
-		return points;
+	/**
+	 * Returns true if the operator can compute the neighborhoods against a
+	 * reference sample. Sub classes supporting it should add the parameters
+	 * returned by {@link #getReferenceSampleParameterTypes()} and restrict the
+	 * neighbors to {@link #getReference()}.
+	 */
+	protected boolean supportsReferenceSampling() {
+		return false;
 	}
 
-	@SuppressWarnings("unchecked")
-	public double[][] preprocessing(double[][] points, int n) {
+	/**
+	 * Returns the indices of the distinct points which form the reference
+	 * sample or null if all points are used.
+	 */
+	public int[] getReference() {
+		return reference;
+	}
 
-		int distinctPointsnumber = 1;
-		LinkedList<Integer>[] lists = new LinkedList[n];
-		Point[] orderedPoints = new Point[n];
-		for (int i = 0; i < n; i++) {
-			orderedPoints[i] = new Point(i, points[i]);
+	/**
+	 * Draws a random sample of the examples without replacement and sets the
+	 * reference to the distinct points hit by the sample. The weight of a
+	 * reference point is the number of sampled examples having its
+	 * coordinates. All other points get the weight 1 as they are only scored
+	 * and never used as neighbor.
+	 * 
+	 * @param n
+	 *            the number of examples
+	 * @param sampleSize
+	 *            the number of examples in the reference sample
+	 * @return the weights adjusted to the reference sample
+	 */
+	private int[] sampleReference(int n, int sampleSize)
+			throws OperatorException {
+		if (sampleSize >= n) {
+			this.logNote("Reference sample size is not smaller than the number of examples, using all examples.");
+			return weight;
 		}
-		Arrays.sort(orderedPoints);
-		int lastIndex = 0;
-		int inserIn = orderedPoints[0].index;
-
-		lists[inserIn] = new LinkedList<Integer>();
-		lists[inserIn].add(new Integer(orderedPoints[0].index));
-
-		for (int i = 1; i < n; i++) {
-			if (orderedPoints[lastIndex].compareTo(orderedPoints[i]) != 0) {
-				lastIndex = i;
-				inserIn = orderedPoints[i].index;
-				lists[inserIn] = new LinkedList<Integer>();
-				distinctPointsnumber++;
-			}
 
-			lists[inserIn].add(new Integer(orderedPoints[i].index));
+		// partial Fisher-Yates shuffle drawing sampleSize examples
+		RandomGenerator random = RandomGenerator.getRandomGenerator(this);
+		int[] examples = new int[n];
+		for (int i = 0; i < n; i++)
+			examples[i] = i;
+		int[] sampleWeight = new int[distinctPoints.length];
+		for (int i = 0; i < sampleSize; i++) {
+			int j = i + random.nextInt(n - i);
+			int temp = examples[i];
+			examples[i] = examples[j];
+			examples[j] = temp;
+			sampleWeight[distinctIndex[examples[i]]]++;
+		}
 
+		int numberOfReferencePoints = 0;
+		for (int i = 0; i < sampleWeight.length; i++) {
+			if (sampleWeight[i] > 0)
+				numberOfReferencePoints++;
+		}
+		if (numberOfReferencePoints < 2) {
+			this.logWarning("Reference sample contains less than two distinct points, using all examples.");
+			return weight;
+		}
+		reference = new int[numberOfReferencePoints];
+		int j = 0;
+		for (int i = 0; i < sampleWeight.length; i++) {
+			if (sampleWeight[i] > 0)
+				reference[j++] = i;
+			else
+				sampleWeight[i] = 1;
 		}
+		this.logNote("Number of distinct records in the reference sample "
+				+ numberOfReferencePoints);
+		return sampleWeight;
+	}
+
+	/**
+	 * Returns the parameters of the reference sampling including the
+	 * parameters of the random generator.
+	 */
+	protected List<ParameterType> getReferenceSampleParameterTypes() {
+		List<ParameterType> types = new ArrayList<ParameterType>();
+		types.add(new ParameterTypeBoolean(
+				PARAMETER_USE_REFERENCE_SAMPLE,
+				"Computes the neighborhoods against a random sample of the examples only. The anomaly score is an approximation then, but the runtime is linear in the number of examples.",
+				false, false));
+		ParameterType type = new ParameterTypeInt(
+				PARAMETER_REFERENCE_SAMPLE_SIZE,
+				"The number of examples in the reference sample", 2,
+				Integer.MAX_VALUE, 1000, false);
+		type.registerDependencyCondition(new BooleanParameterCondition(this,
+				PARAMETER_USE_REFERENCE_SAMPLE, true, true));
+		types.add(type);
+		types.addAll(RandomGenerator.getRandomGeneratorParameters(this));
+		return types;
+	}
 
+	public double[][] preprocessing(double[][] points, int n) {
+		return preprocessing(points, n, 1);
+	}
 
+	/**
+	 * Groups the points with the same coordinates using an open addressing
+	 * hash table over the coordinates. The hash codes are computed in
+	 * parallel and each thread groups the points of its own range of hash
+	 * codes. The distinct points are numbered in the order of their first
+	 * occurrence. Positive and negative zero as well as all NaN values are
+	 * regarded as equal.
+	 * 
+	 * @param points
+	 *            the points of the example set
+	 * @param n
+	 *            the number of points
+	 * @param numberOfThreads
+	 *            the number of threads used for hashing and grouping
+	 * @return the points with distinct coordinates
+	 */
+	public double[][] preprocessing(final double[][] points, final int n,
+			int numberOfThreads) {
+		final int[] hash = new int[n];
+		new ParallelLoop() {
+			@Override
+			protected void run(int start, int end, int block) {
+				for (int i = start; i < end; i++)
+					hash[i] = hashCoordinates(points[i]);
+			}
+		}.execute(n, numberOfThreads);
+
+		// representative[i] is the first point having the coordinates of i
+		final int[] representative = new int[n];
+		final int numberOfBlocks = ParallelLoop.getNumberOfBlocks(n,
+				numberOfThreads);
+		new ParallelLoop() {
+			@Override
+			protected void run(int start, int end, int block) {
+				int size = 0;
+				for (int i = 0; i < n; i++)
+					if (partition(hash[i], numberOfBlocks) == block)
+						size++;
+				int capacity = 2;
+				while (capacity < 2 * size)
+					capacity <<= 1;
+				int mask = capacity - 1;
+				int[] table = new int[capacity];
+				Arrays.fill(table, -1);
+				for (int i = 0; i < n; i++) {
+					if (partition(hash[i], numberOfBlocks) != block)
+						continue;
+					int slot = hash[i] & mask;
+					while (table[slot] >= 0
+							&& (hash[table[slot]] != hash[i] || !sameCoordinates(
+									points[table[slot]], points[i])))
+						slot = (slot + 1) & mask;
+					if (table[slot] < 0)
+						table[slot] = i;
+					representative[i] = table[slot];
+				}
+			}
+		}.execute(numberOfBlocks, numberOfBlocks);
+
+		// numbering the distinct points and counting their weight
+		distinctIndex = new int[n];
+		int distinctPointsnumber = 0;
+		for (int i = 0; i < n; i++) {
+			if (representative[i] == i)
+				distinctIndex[i] = distinctPointsnumber++;
+			else
+				distinctIndex[i] = distinctIndex[representative[i]];
+		}
 		distinctPoints = new double[distinctPointsnumber][];
-		mapping = new LinkedList[distinctPointsnumber];
 		weight = new int[distinctPointsnumber];
-		int j = 0;
 		for (int i = 0; i < n; i++) {
-			if (lists[i] != null) {
-				mapping[j] = lists[i];
-				weight[j] = lists[i].size();
-				distinctPoints[j++] = points[i];
-				if (j == distinctPointsnumber)
-					break;
-			}
+			if (representative[i] == i)
+				distinctPoints[distinctIndex[i]] = points[i];
+			weight[distinctIndex[i]]++;
 		}
 
+		// the mapping in compressed sparse rows with ascending indices
+		mappingStart = new int[distinctPointsnumber + 1];
+		for (int i = 0; i < distinctPointsnumber; i++)
+			mappingStart[i + 1] = mappingStart[i] + weight[i];
+		mappingIndicies = new int[n];
+		int[] position = new int[distinctPointsnumber];
+		System.arraycopy(mappingStart, 0, position, 0, distinctPointsnumber);
+		for (int i = 0; i < n; i++)
+			mappingIndicies[position[distinctIndex[i]]++] = i;
+
 		return distinctPoints;
 	}
 
-   @Override
-public void storeResult(ExampleSet exampleSet, double[] res,
-		Attribute anomalyScore) {
-	for (int i = 0; i < res.length; i++) {
-		for (int id : mapping[i])
-			exampleSet.getExample(id).setValue(anomalyScore, res[i]);
+	private static int hashCoordinates(double[] point) {
+		int h = 1;
+		for (double value : point) {
+			// 0.0 == -0.0 and doubleToLongBits maps all NaN values to one
+			long bits = Double.doubleToLongBits(value == 0 ? 0.0 : value);
+			h = 31 * h + (int) (bits ^ (bits >>> 32));
+		}
+		// spreading the bits, the table index uses the lower bits
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	/**
+	 * Returns the partition of the hash code. The upper bits are used so that
+	 * the partitions do not correlate with the index in the hash table.
+	 */
+	private static int partition(int hash, int numberOfPartitions) {
+		return (int) (((hash & 0xffffffffL) * numberOfPartitions) >>> 32);
+	}
+
+	private static boolean sameCoordinates(double[] a, double[] b) {
+		for (int i = 0; i < a.length; i++)
+			if (a[i] != b[i] && !(a[i] != a[i] && b[i] != b[i]))
+				return false;
+		return true;
+	}
+
+	@Override
+	protected double[] getExampleScores(double[] res) {
+		double[] scores = new double[distinctIndex.length];
+		for (int i = 0; i < scores.length; i++)
+			scores[i] = res[distinctIndex[i]];
+		return scores;
+	}
+
+	/**
+	 * Stores the anomaly scores of the distinct points for all examples. If
+	 * the examples are the rows of a memory table, the scores are written
+	 * directly into the rows in row order and in parallel. Otherwise each
+	 * example is looked up in the example set.
+	 */
+	@Override
+	public void storeResult(ExampleSet exampleSet, final double[] res,
+			final Attribute anomalyScore) {
+		if (ExampleSetReader.isDirectlyAccessible(exampleSet)) {
+			final MemoryExampleTable table = (MemoryExampleTable) exampleSet
+					.getExampleTable();
+			new ParallelLoop() {
+				@Override
+				protected void run(int start, int end, int block) {
+					for (int row = start; row < end; row++)
+						table.getDataRow(row).set(anomalyScore,
+								res[distinctIndex[row]]);
+				}
+			}.execute(distinctIndex.length, preprocessingThreads);
+		} else {
+			for (int i = 0; i < res.length; i++) {
+				for (int j = mappingStart[i]; j < mappingStart[i + 1]; j++)
+					exampleSet.getExample(mappingIndicies[j]).setValue(
+							anomalyScore, res[i]);
+			}
+		}
 	}
-}
 }
@@ -64,9 +64,9 @@ public class INFLOAnomalyDetectionOperator extends KNNAnomalyDetectionOperator {
 		double[] ret = {1};
 		
 		if (n > 1) {
-			if (k >= n) {
+			if (k > getMaximumK(n)) {
 				this.logWarning("Setting " + KNNAnomalyDetectionOperator.PARAMETER_K + " to #Datapoints-1.");
-				k = n-1;
+				k = getMaximumK(n);
 				//this.setParameter(KNNAnomalyDetectionOperator.PARAMETER_K, (n-1)+"");
 			}
 			
@@ -85,11 +85,15 @@ public class INFLOAnomalyDetectionOperator extends KNNAnomalyDetectionOperator {
 		return ret;
 	}
 
+	@Override
+	protected boolean supportsTopNOutliers() {
+		return false;
+	}
+
 	@Override
 	public List<ParameterType> getParameterTypes() {
 		List<ParameterType> types = super.getParameterTypes();
-		ParameterType type = types.get(1);
-		types.remove(type);
+		types.remove(indexOfParameterType(types, PARAMETER_KTH_NEIGHBOR_DISTANCE));
 		return types;
 	}
 
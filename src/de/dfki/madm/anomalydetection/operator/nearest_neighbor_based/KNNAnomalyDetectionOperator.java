@@ -33,6 +33,7 @@ import com.rapidminer.parameter.ParameterType;
 import com.rapidminer.parameter.ParameterTypeBoolean;
 import com.rapidminer.parameter.ParameterTypeInt;
 import com.rapidminer.parameter.conditions.BooleanParameterCondition;
+import com.rapidminer.tools.RandomGenerator;
 import com.rapidminer.tools.math.similarity.DistanceMeasure;
 import com.rapidminer.tools.math.similarity.DistanceMeasureHelper;
 import com.rapidminer.tools.math.similarity.DistanceMeasures;
@@ -40,6 +41,7 @@ import com.rapidminer.tools.math.similarity.DistanceMeasures;
 import de.dfki.madm.anomalydetection.evaluator.nearest_neighbor_based.KNNCollection;
 import de.dfki.madm.anomalydetection.evaluator.nearest_neighbor_based.KNNCollectionModel;
 import de.dfki.madm.anomalydetection.evaluator.nearest_neighbor_based.KNNEvaluator;
+import de.dfki.madm.anomalydetection.evaluator.nearest_neighbor_based.TopNKNNEvaluator;
 
 /**
  * 
@@ -51,6 +53,10 @@ import de.dfki.madm.anomalydetection.evaluator.nearest_neighbor_based.KNNEvaluat
  * according to the measure type selected. The higher the outlier the more
  * anomalous the instance is.
  * 
+ * In the top-n outliers mode, n counts distinct points: duplicate examples are
+ * grouped into one weighted point before the search, so a group of duplicates
+ * counts as one outlier.
+ * 
  * 
  * @author Mennatallah Amer
  * 
@@ -68,6 +74,13 @@ public class KNNAnomalyDetectionOperator extends
 	public static final String PARAMETER_NUMBER_OF_THREADS = "number of threads";
 	/** The parameter name for &quot; **/
 	public static final String PARAMETER_PARALLELIZE_EVALUATION_PROCESS = "parallelize evaluation process";
+	
+	/** The parameter name for &quot;Computes the exact score only for the top-n outliers, which is much faster&quot; **/
+	public static final String PARAMETER_TOP_N_ONLY = "compute top-n outliers only";
+	
+	/** The parameter name for &quot;The number of outliers n which should get their exact score, duplicate examples count as one&quot; **/
+	public static final String PARAMETER_TOP_N = "number of outliers (n)";
+	
 	public OutputPort modelOutput = getOutputPorts().createPort("model");
 	public InputPort modelInput = getInputPorts().createPort("model");
 	
@@ -95,11 +108,18 @@ public class KNNAnomalyDetectionOperator extends
 		double[] ret = {1};
 		
 		if (n > 1) {
-			if (k >= n) {
+			if (k > getMaximumK(n)) {
 				this.logWarning("Setting " + KNNAnomalyDetectionOperator.PARAMETER_K + " to #Datapoints-1.");
-				k = n-1;
+				k = getMaximumK(n);
 				//this.setParameter(KNNAnomalyDetectionOperator.PARAMETER_K, (n-1) + "");
 			}
+			if (supportsTopNOutliers() && getParameterAsBoolean(PARAMETER_TOP_N_ONLY)) {
+				TopNKNNEvaluator evaluator = new TopNKNNEvaluator(points, weight, k, kth, measure,
+						getParameterAsInt(PARAMETER_TOP_N), RandomGenerator.getRandomGenerator(this), this);
+				evaluator.setReference(getReference());
+				this.logNote("Computing top-n outliers only, no model is created.");
+				return evaluator.evaluate();
+			}
 			readModel(n,k,points,weight,measure);
 			KNNEvaluator evaluator = new KNNEvaluator(knnCollection, kth, measure, parallel, numberOfThreads, this,n,k,newCollection);
 			ret = evaluator.evaluate();
@@ -110,6 +130,29 @@ public class KNNAnomalyDetectionOperator extends
 		return ret;
 	}
 
+	/**
+	 * Returns true if the operator offers the top-n outliers mode. The mode is
+	 * only valid for the k-NN score itself, so sub classes computing other
+	 * scores on the nearest neighbors return false.
+	 */
+	protected boolean supportsTopNOutliers() {
+		return true;
+	}
+
+	@Override
+	protected boolean supportsReferenceSampling() {
+		return true;
+	}
+
+	/**
+	 * Returns the largest possible neighborhood size. Each point needs at least
+	 * k other points which can be neighbors.
+	 */
+	protected int getMaximumK(int n) {
+		int[] reference = getReference();
+		return (reference == null ? n : reference.length) - 1;
+	}
+
 	public DistanceMeasureHelper getMeasureHelper() {
 		return measureHelper;
 	}
@@ -119,7 +162,7 @@ public class KNNAnomalyDetectionOperator extends
 			input = modelInput.getData(KNNCollectionModel.class);
 			knnCollection = input.get();
 			newCollection = false;
-			if(k>knnCollection.getK() || !Arrays.deepEquals(knnCollection.getPoints(),points) ||!measure.getClass().toString().equals(input.measure.getClass().toString()) ){
+			if(k>knnCollection.getK() || !Arrays.deepEquals(knnCollection.getPoints(),points) ||!measure.getClass().toString().equals(input.measure.getClass().toString()) || !Arrays.equals(knnCollection.getReference(), getReference())){
 				if(k>knnCollection.getK()) {
 					this.logNote("Model at input port can not be used (k too small).");
 				}
@@ -127,6 +170,7 @@ public class KNNAnomalyDetectionOperator extends
 					this.logNote("Model at input port can not be used (Model andExampleSet not matching).");
 				}
 				knnCollection = new KNNCollection(n, k, points, weight);
+				knnCollection.setReference(getReference());
 				newCollection = true;
 				
 			}
@@ -140,6 +184,7 @@ public class KNNAnomalyDetectionOperator extends
 			}
 	else {
 		knnCollection = new KNNCollection(n, k, points, weight);
+		knnCollection.setReference(getReference());
 		newCollection = true;
 	}
 		
@@ -161,6 +206,19 @@ public class KNNAnomalyDetectionOperator extends
 
 		types.add(type);
 		
+		if (supportsTopNOutliers()) {
+			types.add(new ParameterTypeBoolean(
+					PARAMETER_TOP_N_ONLY,
+					"Computes the exact score only for the top-n outliers using a randomized search with pruning. All other examples get a lower score, which is not exact.",
+					false, false));
+			type = new ParameterTypeInt(PARAMETER_TOP_N,
+					"The number of outliers n which should get their exact score. Duplicate examples are grouped into one point and count as one outlier.", 1,
+					Integer.MAX_VALUE, 100, false);
+			type.registerDependencyCondition(new BooleanParameterCondition(this,
+					PARAMETER_TOP_N_ONLY, true, true));
+			types.add(type);
+		}
+		
 		types.addAll(DistanceMeasures.getParameterTypes(this));
 
 		types
@@ -175,6 +233,8 @@ public class KNNAnomalyDetectionOperator extends
 		type.registerDependencyCondition(new BooleanParameterCondition(this,
 				PARAMETER_PARALLELIZE_EVALUATION_PROCESS, true, true));
 		types.add(type);
+		
+		types.addAll(getReferenceSampleParameterTypes());
 
 		return types;
 
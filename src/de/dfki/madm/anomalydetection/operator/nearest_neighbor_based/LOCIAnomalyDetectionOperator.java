@@ -19,7 +19,6 @@
  */
 package de.dfki.madm.anomalydetection.operator.nearest_neighbor_based;
 
-import java.util.LinkedList;
 import java.util.List;
 
 import com.rapidminer.example.Attributes;
@@ -28,12 +27,15 @@ import com.rapidminer.operator.OperatorDescription;
 import com.rapidminer.operator.OperatorException;
 import com.rapidminer.operator.ports.metadata.DistanceMeasurePrecondition;
 import com.rapidminer.parameter.ParameterType;
+import com.rapidminer.parameter.ParameterTypeBoolean;
 import com.rapidminer.parameter.ParameterTypeDouble;
 import com.rapidminer.parameter.ParameterTypeInt;
+import com.rapidminer.parameter.conditions.BooleanParameterCondition;
 import com.rapidminer.tools.math.similarity.DistanceMeasure;
 import com.rapidminer.tools.math.similarity.DistanceMeasureHelper;
 import com.rapidminer.tools.math.similarity.DistanceMeasures;
 
+import de.dfki.madm.anomalydetection.evaluator.nearest_neighbor_based.BallTree;
 import de.dfki.madm.anomalydetection.evaluator.nearest_neighbor_based.LOCIEvaluator;
 
 
@@ -62,6 +64,14 @@ import de.dfki.madm.anomalydetection.evaluator.nearest_neighbor_based.LOCIEvalua
  * &sigmaMDEF(pi, r, &alpha) over all r. The higher the ratio the more outlier
  * the object is. The proposed threshold to determine outliers is 3.
  * </p>
+ * <p>
+ * The distances to all other points are kept for every point. On large data
+ * sets the sampling neighborhood can be limited to a maximum radius, so that
+ * only the distances within this radius are kept. Limiting the sampling
+ * neighborhood to a maximum number of neighbors reduces the runtime further.
+ * For metric distance measures the neighbors can also be counted in a ball
+ * tree, so that no distances but the ones of the current point are kept.
+ * </p>
  * 
  * @author Mennatallah Amer
  * 
@@ -81,6 +91,40 @@ public class LOCIAnomalyDetectionOperator extends
 	 **/
 	public static String PARAMETER_ALPHA = "alpha";
 
+	/**
+	 * The parameter name for &quot; Limits the sampling neighborhood to a
+	 * maximum radius. &quot;
+	 **/
+	public static String PARAMETER_USE_MAXIMUM_RADIUS = "use maximum radius";
+
+	/**
+	 * The parameter name for &quot; The maximum radius of the sampling
+	 * neighborhood. &quot;
+	 **/
+	public static String PARAMETER_MAXIMUM_RADIUS = "maximum radius (r max)";
+
+	/**
+	 * The parameter name for &quot; Limits the number of neighbors in the
+	 * sampling neighborhood. &quot;
+	 **/
+	public static String PARAMETER_USE_N_MAX = "use maximum neighborhood size";
+
+	/**
+	 * The parameter name for &quot; The maximum number of neighbors in the
+	 * sampling neighborhood. &quot;
+	 **/
+	public static String PARAMETER_N_MAX = "n max";
+
+	/**
+	 * The parameter name for &quot; Counts the neighbors in a ball tree
+	 * instead of keeping the distances of all points within the maximum
+	 * radius. &quot;
+	 **/
+	public static String PARAMETER_USE_BALL_TREE = "use ball tree";
+
+	public static String PARAMETER_PARALLELIZE_EVALUATION_PROCESS = "parallelize evaluation process";
+	public static String PARAMETER_NUMBER_OF_THREADS = "number of threads";
+
 	private DistanceMeasureHelper measureHelper = new DistanceMeasureHelper(
 			this);
 
@@ -107,15 +151,34 @@ public class LOCIAnomalyDetectionOperator extends
 				//this.setParameter(PARAMETER_N_MIN, (n-1)+"");
 			}
 			
+			double maximumRadius = Double.POSITIVE_INFINITY;
+			if (getParameterAsBoolean(PARAMETER_USE_MAXIMUM_RADIUS))
+				maximumRadius = getParameterAsDouble(PARAMETER_MAXIMUM_RADIUS);
+			
+			int nmax = Integer.MAX_VALUE;
+			if (getParameterAsBoolean(PARAMETER_USE_N_MAX))
+				nmax = getParameterAsInt(PARAMETER_N_MAX);
+			boolean parallel = getParameterAsBoolean(PARAMETER_PARALLELIZE_EVALUATION_PROCESS);
+			int numberOfThreads = getParameterAsInt(PARAMETER_NUMBER_OF_THREADS);
+			
 			LOCIEvaluator evaluator = new LOCIEvaluator(measure, alpha, nmin,
-					points, weight);
+					points, weight, maximumRadius, nmax, parallel,
+					numberOfThreads);
+			if (getParameterAsBoolean(PARAMETER_USE_BALL_TREE)) {
+				if (maximumRadius == Double.POSITIVE_INFINITY)
+					this.logWarning("The ball tree is not used because it needs a maximum radius.");
+				else if (BallTree.supports(measure))
+					evaluator.setUseTree(true);
+				else
+					this.logWarning("The ball tree is not used because it needs a metric distance measure (Euclidean, Manhattan or Chebychev).");
+			}
 			ret = evaluator.evaluate();
 		}
 		return ret;
 	}
 
 	public List<ParameterType> getParameterTypes() {
-		LinkedList<ParameterType> types = new LinkedList<ParameterType>();
+		List<ParameterType> types = super.getParameterTypes();
 		types
 				.add(new ParameterTypeDouble(
 						PARAMETER_ALPHA,
@@ -126,8 +189,50 @@ public class LOCIAnomalyDetectionOperator extends
 						PARAMETER_N_MIN,
 						"The minimum number of neighbors in the sampling neighborhood.",
 						1, Integer.MAX_VALUE, 20, false));
+		types
+				.add(new ParameterTypeBoolean(
+						PARAMETER_USE_MAXIMUM_RADIUS,
+						"Limits the sampling neighborhood to a maximum radius. Only the distances within this radius are kept, which reduces the memory and the runtime.",
+						false, false));
+		ParameterType type = new ParameterTypeDouble(PARAMETER_MAXIMUM_RADIUS,
+				"The maximum radius of the sampling neighborhood.", 0,
+				Double.POSITIVE_INFINITY, 1, false);
+		type.registerDependencyCondition(new BooleanParameterCondition(this,
+				PARAMETER_USE_MAXIMUM_RADIUS, true, true));
+		types.add(type);
+		types
+				.add(new ParameterTypeBoolean(
+						PARAMETER_USE_N_MAX,
+						"Limits the number of neighbors in the sampling neighborhood. Larger radii are not examined.",
+						false, false));
+		type = new ParameterTypeInt(PARAMETER_N_MAX,
+				"The maximum number of neighbors in the sampling neighborhood.",
+				1, Integer.MAX_VALUE, 1000, false);
+		type.registerDependencyCondition(new BooleanParameterCondition(this,
+				PARAMETER_USE_N_MAX, true, true));
+		types.add(type);
+
+		type = new ParameterTypeBoolean(
+				PARAMETER_USE_BALL_TREE,
+				"Counts the neighbors in a ball tree instead of keeping the distances of all points within the maximum radius. The memory is linear in the number of examples, but the runtime grows with the square of the number of neighbors within the maximum radius and is typically 5 to 15 times the one of the kept distances. Only for metric distance measures.",
+				false, true);
+		type.registerDependencyCondition(new BooleanParameterCondition(this,
+				PARAMETER_USE_MAXIMUM_RADIUS, true, true));
+		types.add(type);
 
 		types.addAll(DistanceMeasures.getParameterTypes(this));
+
+		types.add(new ParameterTypeBoolean(
+				PARAMETER_PARALLELIZE_EVALUATION_PROCESS,
+				"Specifies that evaluation process should be performed in parallel.",
+				false, false));
+		type = new ParameterTypeInt(PARAMETER_NUMBER_OF_THREADS,
+				"Specifies the number of threads for execution.", 1,
+				Integer.MAX_VALUE, Runtime.getRuntime().availableProcessors(),
+				false);
+		type.registerDependencyCondition(new BooleanParameterCondition(this,
+				PARAMETER_PARALLELIZE_EVALUATION_PROCESS, true, true));
+		types.add(type);
 		return types;
 
 	}
@@ -30,6 +30,7 @@ import com.rapidminer.tools.math.similarity.DistanceMeasure;
 import de.dfki.madm.anomalydetection.evaluator.nearest_neighbor_based.KNNCollection;
 import de.dfki.madm.anomalydetection.evaluator.nearest_neighbor_based.KNNCollectionModel;
 import de.dfki.madm.anomalydetection.evaluator.nearest_neighbor_based.LOFEvaluator;
+import de.dfki.madm.anomalydetection.evaluator.nearest_neighbor_based.LOFModel;
 
 
 import java.util.Arrays;
@@ -62,6 +63,13 @@ import java.util.List;
  * A normal instance has an outlier value of approximately 1, while outliers
  * have values greater than 1.
  * </p>
+ * <p>
+ * The model output contains the nearest neighbors for MinPtsUB together with
+ * the local reachability densities of the calculated MinPts. Connecting it to
+ * the model input of a later execution with a MinPts range within this bound
+ * skips the neighbor search and the lrd calculations done before, e.g. when
+ * optimizing the MinPts range.
+ * </p>
  * 
  * @author Mennatallah Amer
  * 
@@ -87,9 +95,9 @@ public class LOFAnomalyDetectionOperator extends KNNAnomalyDetectionOperator {
 		double[] ret = {1};
 
 		if (n > 1) {
-			if (maxK >= n) {
-				this.logWarning("Setting " + PARAMETER_MAXIMUM_K + " to "+ (n-1) + " because there cannot be more neighbors than data points.");
-				maxK = n-1;
+			if (maxK > getMaximumK(n)) {
+				this.logWarning("Setting " + PARAMETER_MAXIMUM_K + " to "+ getMaximumK(n) + " because there cannot be more neighbors than data points.");
+				maxK = getMaximumK(n);
 				//this.setParameter(PARAMETER_MAXIMUM_K, maxK+"");
 			}
 			if (maxK < minK) {
@@ -101,31 +109,47 @@ public class LOFAnomalyDetectionOperator extends KNNAnomalyDetectionOperator {
 			int numberOfThreads = getParameterAsInt(PARAMETER_NUMBER_OF_THREADS);
 			
 			readModel(n,maxK,points,weight,measure);
-			//KNNCollection knnCollection = new KNNCollection(n, maxK, points, weight);
+			KNNCollectionModel input = newCollection ? null : modelInput.getData(KNNCollectionModel.class);
+			// LOF shrinks the collection, so the one of the input model is copied
+			if (!newCollection && knnCollection == input.get())
+				knnCollection = KNNCollection.clone(knnCollection);
+
+			// the lrd of each MinPts are only kept if the model is used
+			double[][] lrdCache = null;
+			if (modelOutput.isConnected()) {
+				if (input instanceof LOFModel)
+					lrdCache = ((LOFModel) input).getLrd().clone();
+				else
+					lrdCache = new double[newCollection ? maxK : input.get().getK()][];
+			}
 			LOFEvaluator evaluator = new LOFEvaluator(minK, knnCollection, 
 					measure,parallel, numberOfThreads, this, n,  maxK ,  newCollection);
+			evaluator.setLrdCache(lrdCache);
 			ret = evaluator.evaluate();
-			if(newCollection) {
-				model = new KNNCollectionModel(exampleSet,knnCollection,measure);
+			if (lrdCache != null) {
+				model = new LOFModel(exampleSet, newCollection ? evaluator.getSavedCollection() : input.get(), measure, lrdCache);
+				modelOutput.deliver(model);
 			}
-			else {
-				model = new KNNCollectionModel(exampleSet,modelInput.getData(KNNCollectionModel.class).get(),measure);
-			}
-			modelOutput.deliver(model);
 			knnCollection = null;
 			
 		}
 		return ret;
 	}
 
+	@Override
+	protected boolean supportsTopNOutliers() {
+		return false;
+	}
+
 	@Override
 	public List<ParameterType> getParameterTypes() {
 		List<ParameterType> types = super.getParameterTypes();
-		types.get(0).setKey(PARAMETER_MINIMUM_K);
-		types.get(0).setDescription("The lower bound of MinPts");
-		types.remove(1);
+		int index = indexOfParameterType(types, PARAMETER_K);
+		types.get(index).setKey(PARAMETER_MINIMUM_K);
+		types.get(index).setDescription("The lower bound of MinPts");
+		types.remove(indexOfParameterType(types, PARAMETER_KTH_NEIGHBOR_DISTANCE));
 
-		types.add(1, new ParameterTypeInt(PARAMETER_MAXIMUM_K,
+		types.add(index + 1, new ParameterTypeInt(PARAMETER_MAXIMUM_K,
 				"The upper bound of the MinPts ", 1, Integer.MAX_VALUE, 20,
 				false));
 
@@ -82,9 +82,9 @@ public class LoOPAnomalyDetectionOperator extends KNNAnomalyDetectionOperator {
 		}
 		
 		if (n > 1) {
-			if (k >= n) {
+			if (k > getMaximumK(n)) {
 				this.logWarning("Setting " + KNNAnomalyDetectionOperator.PARAMETER_K + " to #Datapoints-1.");
-				k = n-1;
+				k = getMaximumK(n);
 				//this.setParameter(KNNAnomalyDetectionOperator.PARAMETER_K, (n-1)+"");
 			}
 			boolean parallel = getParameterAsBoolean(PARAMETER_PARALLELIZE_EVALUATION_PROCESS);
@@ -102,12 +102,18 @@ public class LoOPAnomalyDetectionOperator extends KNNAnomalyDetectionOperator {
 		return ret;
 	}
 
+	@Override
+	protected boolean supportsTopNOutliers() {
+		return false;
+	}
+
 	public List<ParameterType> getParameterTypes() {
 		List<ParameterType> types = super.getParameterTypes();
-		types.remove(1);
+		int index = indexOfParameterType(types, PARAMETER_KTH_NEIGHBOR_DISTANCE);
+		types.remove(index);
 		types
 				.add(
-						1,
+						index,
 						new ParameterTypeDouble(
 								PARAMETER_LAMBDA,
 								"The normalization factor. The results are weakly affected by this factor. ",